@@ -1,5 +1,8 @@
 package com.vesperin.cue;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
@@ -13,23 +16,40 @@ import com.vesperin.base.locators.ProgramUnitLocation;
 import com.vesperin.base.locators.UnitLocation;
 import com.vesperin.cue.segment.BlockSegmentationVisitor;
 import com.vesperin.cue.segment.SegmentationGraph;
+import com.vesperin.cue.segment.UnitAnalysis;
 import com.vesperin.cue.spi.SourceSelection;
+import com.vesperin.cue.text.SparseVector;
+import com.vesperin.cue.text.StopWords;
 import com.vesperin.cue.text.TokenIterator;
+import com.vesperin.cue.text.Vocabulary;
 import com.vesperin.cue.text.WordCounter;
+import com.vesperin.cue.text.WordIterator;
+import com.vesperin.cue.utils.KMedoids;
 import com.vesperin.cue.utils.Similarity;
 import com.vesperin.cue.utils.Sources;
+import com.vesperin.cue.utils.VantagePointTree;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.vesperin.cue.utils.AstUtils.methodName;
@@ -157,8 +177,24 @@ public interface Introspector {
    * @return a new list of guessed concepts.
    */
   default List<String> assignedConcepts(Location locatedUnit, int topK){
+    return assignedConcepts(locatedUnit, topK, false);
+  }
+
+  /**
+   * Determine the top k most concepts that appear within a located unit.
+   *
+   * @param locatedUnit list of sources to inspect.
+   * @param topK k most frequent concepts in the list of sources.
+   * @param perMethod true if a whole compilation unit should be segmented one method at
+   *                  a time (see {@link #generatePerMethodIrrelevantSet(UnitLocation)});
+   *                  false if it should be segmented as a single unit.
+   * @return a new list of guessed concepts.
+   */
+  default List<String> assignedConcepts(Location locatedUnit, int topK, boolean perMethod){
     final UnitLocation  unitLocation  = (UnitLocation) Objects.requireNonNull(locatedUnit);
-    final Set<Location> irrelevantSet = generateIrrelevantSet(unitLocation);
+    final Set<Location> irrelevantSet = (perMethod && unitLocation.getUnitNode() instanceof CompilationUnit)
+      ? generatePerMethodIrrelevantSet(unitLocation)
+      : generateIrrelevantSet(unitLocation);
 
     return interestingConcepts(topK, unitLocation, irrelevantSet);
   }
@@ -177,6 +213,45 @@ public interface Introspector {
     return bsg.irrelevantSet(unitLocation);
   }
 
+  /**
+   * Generates the set of irrelevant locations of a whole compilation unit, one method at
+   * a time: each method not nested in another method is segmented on its own, with its
+   * own capacity, and their irrelevant sets are joined. Methods are segmented in
+   * parallel.
+   *
+   * @param unitLocation the located compilation unit.
+   * @return a new set of irrelevant locations.
+   */
+  static Set<Location> generatePerMethodIrrelevantSet(UnitLocation unitLocation){
+    Objects.requireNonNull(unitLocation);
+
+    final CompilationUnit root = (CompilationUnit) unitLocation.getUnitNode().getRoot();
+
+    // builds the unit's shared indexes up front; segmenting methods only reads them
+    UnitAnalysis.of(root);
+
+    final List<UnitLocation> methods = new ArrayList<>();
+    root.accept(new ASTVisitor() {
+      @Override public boolean visit(MethodDeclaration node) {
+        if(node.getBody() != null){
+          methods.add(new ProgramUnitLocation(node, Locations.locate(node)));
+        }
+
+        // methods nested in this one are segmented with it
+        return false;
+      }
+    });
+
+    final List<Set<Location>> irrelevantSets = methods.parallelStream()
+      .map(Introspector::generateIrrelevantSet)
+      .collect(Collectors.toList());
+
+    final ImmutableSet.Builder<Location> irrelevantSet = ImmutableSet.builder();
+    irrelevantSets.forEach(irrelevantSet::addAll);
+
+    return irrelevantSet.build();
+  }
+
   /**
    * Generates a new segmentation graph based on a located program unit..
    *
@@ -202,10 +277,10 @@ public interface Introspector {
   default List<String> interestingConcepts(int topK, UnitLocation located,
           Set<Location> irrelevantSet){
     // collect frequent words outside the blacklist of locations
-    final TokenIterator extractor   = new TokenIterator(irrelevantSet);
-    located.getUnitNode().accept(extractor);
+    final ASTNode      unitNode = located.getUnitNode();
+    final List<String> tokens   = UnitAnalysis.of(unitNode).tokensOf(unitNode, irrelevantSet);
 
-    final WordCounter wordCounter = new WordCounter(extractor.getItems());
+    final WordCounter wordCounter = new WordCounter(tokens);
 
     return wordCounter.mostFrequent(topK);
   }
@@ -236,8 +311,82 @@ public interface Introspector {
    *  implementing a similar functionality.
    */
   default List<Source> representativeTypicalityQuery(int topk, Set<Source> resultSet, Set<String> domain) {
-    final Map<Source, List<Source>> region = interestingRegion(topk, resultSet, domain);
+    return byRegionSize(interestingRegion(topk, resultSet, domain));
+  }
+
+  /**
+   * Finds k representative source objects (medoids) that jointly represent the whole set of
+   * similar objects. Unlike {@link #representativeTypicalityQuery(int, Set, Set)}, which
+   * first picks the top k typical objects and then assigns every other object to its nearest
+   * typical one, the representatives here are chosen to minimize the total distance between
+   * every object and its nearest representative (k-medoids). Large result sets are sampled
+   * (CLARA), so the query runs in bounded time.
+   *
+   * See {@link KMedoids} for additional details.
+   *
+   * @param k number of representatives.
+   * @param resultSet the set of source objects implementing a similar functionality.
+   * @param domain relevant method names.
+   * @return a list of (at most) k representative source objects, ranked by the number of
+   *  source objects they represent.
+   */
+  default List<Source> representativeMedoidsQuery(int k, Set<Source> resultSet, Set<String> domain){
+    return representativeMedoidsQuery(k, resultSet, domain, new Random(KMedoids.SEED));
+  }
+
+  /**
+   * Finds k representative source objects (medoids) that jointly represent the whole set of
+   * similar objects, sampling large result sets with the given source of randomness.
+   *
+   * @param k number of representatives.
+   * @param resultSet the set of source objects implementing a similar functionality.
+   * @param domain relevant method names.
+   * @param random the source of randomness used for sampling.
+   * @return a list of (at most) k representative source objects, ranked by the number of
+   *  source objects they represent.
+   */
+  default List<Source> representativeMedoidsQuery(int k, Set<Source> resultSet, Set<String> domain,
+          Random random){
+    return byRegionSize(medoidsRegion(k, resultSet, domain, random));
+  }
+
+  /**
+   * Partitions a set of source objects around k medoids.
+   *
+   * @param k number of medoids.
+   * @param resultSet the set of source objects implementing a similar functionality.
+   * @param relevant relevant method names.
+   * @return a map between each medoid and the source objects closest to it.
+   */
+  default Map<Source, List<Source>> medoidsRegion(int k, Set<Source> resultSet,
+          Set<String> relevant){
+    return medoidsRegion(k, resultSet, relevant, new Random(KMedoids.SEED));
+  }
+
+  /**
+   * Partitions a set of source objects around k medoids.
+   *
+   * @param k number of medoids.
+   * @param resultSet the set of source objects implementing a similar functionality.
+   * @param relevant relevant method names.
+   * @param random the source of randomness used for sampling.
+   * @return a map between each medoid and the source objects closest to it.
+   */
+  default Map<Source, List<Source>> medoidsRegion(int k, Set<Source> resultSet,
+          Set<String> relevant, Random random){
+
+    if(resultSet.isEmpty() || k <= 0) return new HashMap<>();
 
+    final Map<Source, String> segments = new ConcurrentHashMap<>();
+    resultSet.parallelStream()
+      .forEach(each -> segments.put(each, segmentsCode(each, relevant)));
+
+    final KMedoids<Source> medoids = new KMedoids<>(k, (a, b) -> distance(a, b, segments), random);
+
+    return medoids.cluster(resultSet);
+  }
+
+  static List<Source> byRegionSize(Map<Source, List<Source>> region){
     final Comparator<Map.Entry<Source, List<Source>>> byValue =
       (entry1, entry2) ->
         Ints.compare(entry1.getValue().size(), entry2.getValue().size());
@@ -291,17 +440,14 @@ public interface Introspector {
 
     final Map<Source, List<Source>> region = new HashMap<>();
 
+    // metric tree (edit distance) over T; most distance calls are pruned by the
+    // triangle inequality
+    final VantagePointTree<Source> typicalTree = new VantagePointTree<>(
+      typicalitySet, (a, b) -> editDistance(segments.get(a), segments.get(b))
+    );
+
     for(Source e : difference){
-      Source max = null;
-      for(Source o : typicalitySet){
-        if(max == null){
-          max = o;
-        } else {
-          if(score(e, o, segments) > score(max, o, segments)){
-            max = o;
-          }
-        }
-      }
+      final Source max = nearest(typicalTree, e, segments);
 
       if(!region.containsKey(max)){
         region.put(max, Lists.newArrayList(e));
@@ -344,6 +490,48 @@ public interface Introspector {
     return typicalityQuery(topK, resultSet, new SegmentsTypicalityProcessor(h, relevant));
   }
 
+  /**
+   * Finds the top k most typical implementation of some functionality in a set of
+   * similar implementations of that functionality, within a time budget. The typicality
+   * score of each object is estimated by progressive random sampling of pairs, and refined
+   * while time remains. Once the budget is exhausted, the current top k estimates (and their
+   * confidence intervals) are returned.
+   *
+   * See {@link SampledTypicalityProcessor} for additional details.
+   *
+   * @param topK top k most typical implementations.
+   * @param h smoothing factor
+   * @param budget the time budget.
+   * @param unit the unit of the time budget.
+   * @param resultSet a set of source objects implementing a similar functionality.
+   * @param relevant relevant methods names to introspect
+   * @return a new list of the k most typical estimates, ranked by their estimated score.
+   */
+  default List<Estimate> typicalityQuery(int topK, double h, long budget, TimeUnit unit,
+          Set<Source> resultSet, Set<String> relevant){
+    return new SampledTypicalityProcessor(h, budget, unit, relevant).estimate(topK, resultSet);
+  }
+
+  /**
+   * Finds the top k most typical implementation of some functionality in a set of
+   * similar implementations of that functionality. Ranks the whole result set by
+   * a cheap similarity first, and then re-ranks only the top M (shortlist) candidates
+   * using the exact typicality kernel.
+   *
+   * See {@link CascadeTypicalityProcessor} for additional details.
+   *
+   * @param topK top k most typical implementations.
+   * @param shortlist number of candidates re-ranked by the exact kernel.
+   * @param h smoothing factor
+   * @param resultSet a set of source objects implementing a similar functionality.
+   * @param relevant relevant methods names to introspect
+   * @return a new list of k most typical source objects implementing a similar functionality.
+   */
+  default List<Source> typicalityQuery(int topK, int shortlist, double h, Set<Source> resultSet,
+          Set<String> relevant){
+    return typicalityQuery(topK, resultSet, new CascadeTypicalityProcessor(shortlist, h, relevant));
+  }
+
 
   /**
    * Finds the top k most typical implementation of some functionality in a set of
@@ -434,6 +622,65 @@ public interface Introspector {
     );
   }
 
+  static double distance(Source a, Source b, Map<Source, String> summaries){
+    return distance(summaries.get(a), summaries.get(b));
+  }
+
+  static double distance(String a, String b){
+    return normalize(editDistance(a, b), a.length(), b.length());
+  }
+
+  /**
+   * Edit distance between two summaries. Unlike {@link Similarity#distance(String, String)},
+   * an empty summary is as far from another summary as the other summary is long; i.e.,
+   * this is a metric.
+   *
+   * @param a first summary
+   * @param b second summary
+   * @return the edit distance.
+   */
+  static int editDistance(String a, String b){
+    if(a.isEmpty()) return b.length();
+    if(b.isEmpty()) return a.length();
+
+    return Similarity.distance(a, b);
+  }
+
+  /**
+   * Normalizes the edit distance between two summaries by the length of the longest one
+   * (see {@link Similarity#normalizeDistance(String, String)}).
+   *
+   * @param editDistance edit distance between the summaries
+   * @param a length of first summary
+   * @param b length of second summary
+   * @return the normalized distance, in [0, 1].
+   */
+  static double normalize(double editDistance, int a, int b){
+    final int longest = Math.max(a, b);
+    // two empty summaries are the same summary
+    return longest == 0 ? 0.0 : (float) editDistance / longest;
+  }
+
+  /**
+   * Finds the indexed summary closest (by normalized edit distance) to a query summary.
+   *
+   * @param tree a metric tree indexing summaries by their edit distance.
+   * @param query the query source object.
+   * @param summaries the summary of every source object.
+   * @return the closest source object.
+   */
+  static Source nearest(VantagePointTree<Source> tree, Source query, Map<Source, String> summaries){
+    final int length = summaries.get(query).length();
+
+    // since |a.length - b.length| <= editDistance(a, b), any summary at edit distance d
+    // (or farther) is at least d / (length + d) away once normalized.
+    return tree.nearest(
+      query,
+      (q, item, d) -> normalize(d, length, summaries.get(item).length()),
+      d -> (length + d) == 0 ? 0.0 : d / (length + d)
+    );
+  }
+
   /**
    * A type of processor for typicality queries.
    * @param <T> feature type
@@ -545,10 +792,31 @@ public interface Introspector {
       if(sources.isEmpty()) return ImmutableList.of();
       if(topK <= 0)         return ImmutableList.of();
 
-      final Map<Feature<String>, Double> T = new HashMap<>();
-
       final Set<Feature<String>> features = from(sources);
 
+      assert features.size() == sources.size();
+
+      final Map<Feature<String>, Double> T = typicality(features);
+
+      final List<Feature<String>> result = T.keySet().stream()
+        .sorted((a, b) -> Double.compare(T.get(b), T.get(a)))
+        .limit(topK)
+        .collect(Collectors.toList());
+
+      return result.stream()
+        .map(Feature::source)
+        .collect(Collectors.toList());
+    }
+
+    /**
+     * Computes the typicality score of every feature in a set of features.
+     *
+     * @param features all the features in the result set.
+     * @return a map between each feature and its typicality score.
+     */
+    Map<Feature<String>, Double> typicality(Set<Feature<String>> features){
+      final Map<Feature<String>, Double> T = new HashMap<>();
+
       // Compute the cartesian product of the sources object
       final Set<List<Feature<String>>> cartesian = Sets.cartesianProduct(
         Arrays.asList(features, features)
@@ -560,8 +828,6 @@ public interface Introspector {
         T.put(code, 0.0);
       }
 
-      assert features.size() == sources.size();
-
       double t1  = 1.0d / (features.size() - 1) * Math.sqrt(2.0 * Math.PI);
       double t2  = 2.0 * Math.pow(h, 2);
 
@@ -579,27 +845,645 @@ public interface Introspector {
         T.put(oj, Toj);
       }
 
-      final List<Feature<String>> result = T.keySet().stream()
+      return T;
+    }
+
+
+    /**
+     * Computes the exact typicality score of a single feature with respect to a set of
+     * features. This is the same per-object sum {@link #process(int, Set)} accumulates
+     * over the cartesian product, but it only touches the pairs involving the given feature.
+     *
+     * @param o the feature to score.
+     * @param features all the features in the result set.
+     * @return the typicality score of o.
+     */
+    double typicality(Feature<String> o, Set<Feature<String>> features){
+      final double t1  = 1.0d / (features.size() - 1) * Math.sqrt(2.0 * Math.PI);
+      final double t2  = 2.0 * Math.pow(h, 2);
+
+      double T = 0.0;
+      for(Feature<String> each : features){
+        final double w = gaussianKernel(t1, t2, new Pair<>(o, each));
+
+        // (o, o) is counted once; (o, each) and (each, o) are counted once each
+        T += each.equals(o) ? w : 2.0 * w;
+      }
+
+      return T;
+    }
+
+    private static double gaussianKernel(double t1, double t2, Pair<String> pair){
+      return t1 * Math.exp(-(Math.pow(score(pair.oi, pair.oj), 2) / t2));
+    }
+
+    private static double score(Feature<String> a, Feature<String> b){
+      return similarityScore(a.data(), b.data());
+    }
+
+    @Override public String toString() {
+      return "SegmentsTypicalityProcessor (smoothingFactor = " + h + ")";
+    }
+  }
+
+  /**
+   * A typicality score estimate together with its (approximate 95%) confidence interval.
+   */
+  class Estimate {
+    private final Source source;
+    private final double typicality;
+    private final double lower;
+    private final double upper;
+    private final int    samples;
+
+    Estimate(Source source, double typicality, double lower, double upper, int samples){
+      this.source     = source;
+      this.typicality = typicality;
+      this.lower      = lower;
+      this.upper      = upper;
+      this.samples    = samples;
+    }
+
+    /**
+     * @return the estimated source object.
+     */
+    public Source source() {
+      return source;
+    }
+
+    /**
+     * @return the estimated typicality score.
+     */
+    public double typicality() {
+      return typicality;
+    }
+
+    /**
+     * @return the lower bound of the confidence interval.
+     */
+    public double lower() {
+      return lower;
+    }
+
+    /**
+     * @return the upper bound of the confidence interval.
+     */
+    public double upper() {
+      return upper;
+    }
+
+    /**
+     * @return number of pairs sampled for this source object.
+     */
+    public int samples() {
+      return samples;
+    }
+
+    @Override public String toString() {
+      return String.format("%s: %.4f [%.4f, %.4f] (%d samples)",
+        source.getName(), typicality, lower, upper, samples
+      );
+    }
+  }
+
+  /**
+   * Anytime implementation of typicality analysis. It estimates each object's typicality
+   * score (as computed by {@link SegmentsTypicalityProcessor}) by sampling pairs of objects
+   * without replacement, in random round-robin rounds, until either the time budget runs
+   * out or every pair has been sampled (which yields the exact score).
+   */
+  class SampledTypicalityProcessor implements Processor <Feature<String>> {
+    private static final double Z = 1.96; // 95% confidence
+
+    private final SegmentsTypicalityProcessor kernel;
+    private final long                        budgetInNanos;
+    private final Random                      random;
+
+    /**
+     * Construct a new time-budgeted Typicality Processor
+     *
+     * @param h smoothing factor
+     * @param budget the time budget.
+     * @param unit the unit of the time budget.
+     * @param relevant relevant method names
+     */
+    public SampledTypicalityProcessor(double h, long budget, TimeUnit unit, Set<String> relevant){
+      this(h, budget, unit, relevant, new Random());
+    }
+
+    /**
+     * Construct a new time-budgeted Typicality Processor
+     *
+     * @param h smoothing factor
+     * @param budget the time budget.
+     * @param unit the unit of the time budget.
+     * @param relevant relevant method names
+     * @param random source of randomness used for sampling pairs.
+     */
+    public SampledTypicalityProcessor(double h, long budget, TimeUnit unit, Set<String> relevant,
+            Random random){
+      if(budget <= 0) throw new IllegalArgumentException("Budget must be positive");
+
+      this.kernel         = new SegmentsTypicalityProcessor(h, relevant);
+      this.budgetInNanos  = Objects.requireNonNull(unit).toNanos(budget);
+      this.random         = Objects.requireNonNull(random);
+    }
+
+    @Override public Feature<String> from(Source source) {
+      return kernel.from(source);
+    }
+
+    @Override public List<Source> process(int topK, Set<Source> sources) {
+      return estimate(topK, sources).stream()
+        .map(Estimate::source)
+        .collect(Collectors.toList());
+    }
+
+    /**
+     * Estimates the typicality score of each source object within the time budget.
+     *
+     * @param topK k most typical source objects to return.
+     * @param sources a set of source objects implementing a similar functionality.
+     * @return the top k estimates, ranked by estimated score.
+     */
+    public List<Estimate> estimate(int topK, Set<Source> sources) {
+      final long deadline = System.nanoTime() + budgetInNanos;
+
+      if(sources.isEmpty()) return ImmutableList.of();
+      if(topK <= 0)         return ImmutableList.of();
+
+      final List<Source> objects = Lists.newArrayList(sources);
+      Collections.shuffle(objects, random);
+
+      final int N = objects.size();
+
+      final double t1   = 1.0d / (N - 1) * Math.sqrt(2.0 * Math.PI);
+      final double t2   = 2.0 * Math.pow(kernel.h, 2);
+      final double kMin = t1 * Math.exp(-(1.0 / t2)); // similarity of 1
+      final double kMax = t1;                         // similarity of 0
+
+      // features are extracted lazily, since extracting them also eats the budget
+      final List<Feature<String>> features = new ArrayList<>(Collections.nCopies(N, null));
+
+      final int[]     count = new int[N];
+      final double[]  mean  = new double[N];
+      final double[]  m2    = new double[N];
+
+      // round r pairs each object i with object (i + r) mod N; rounds 1..N/2 cover all pairs
+      final List<Integer> rounds = new ArrayList<>();
+      for(int r = 1; r <= N / 2; r++) rounds.add(r);
+      Collections.shuffle(rounds, random);
+
+      sampling: for(int r : rounds){
+        final int pairs = (2 * r == N) ? N / 2 : N;
+        for(int i = 0; i < pairs; i++){
+          if(System.nanoTime() >= deadline) break sampling;
+
+          final int j = (i + r) % N;
+
+          if(features.get(i) == null) features.set(i, from(objects.get(i)));
+          if(features.get(j) == null) features.set(j, from(objects.get(j)));
+
+          final double w = SegmentsTypicalityProcessor.gaussianKernel(
+            t1, t2, new Pair<>(features.get(i), features.get(j))
+          );
+
+          update(i, w, count, mean, m2);
+          update(j, w, count, mean, m2);
+        }
+      }
+
+      final List<Estimate> estimates = new ArrayList<>(N);
+      for(int i = 0; i < N; i++){
+        // K(o, o) is only known for objects whose features were extracted
+        final Feature<String> feature = features.get(i);
+        final double          kSelf   = feature == null
+          ? Double.NaN
+          : SegmentsTypicalityProcessor.gaussianKernel(t1, t2, new Pair<>(feature, feature));
+
+        estimates.add(estimate(objects.get(i), N, count[i], mean[i], m2[i], kSelf, kMin, kMax));
+      }
+
+      return estimates.stream()
+        .sorted((a, b) -> Double.compare(b.typicality(), a.typicality()))
+        .limit(topK)
+        .collect(Collectors.toList());
+    }
+
+    private static void update(int i, double w, int[] count, double[] mean, double[] m2){
+      // Welford's online mean and variance
+      count[i]++;
+      final double delta = w - mean[i];
+      mean[i] += delta / count[i];
+      m2[i]   += delta * (w - mean[i]);
+    }
+
+    private static Estimate estimate(Source source, int N, int n, double mean, double m2,
+            double kSelf, double kMin, double kMax){
+
+      // exact score: K(o, o) + 2 * sum of K(o, p) for the other N - 1 objects
+      final int    others = N - 1;
+
+      if(n == 0){
+        final double lowest  = (Double.isNaN(kSelf) ? kMin : kSelf) + 2.0 * others * kMin;
+        final double highest = (Double.isNaN(kSelf) ? kMax : kSelf) + 2.0 * others * kMax;
+
+        return new Estimate(source, (lowest + highest) / 2.0, lowest, highest, 0);
+      }
+
+      final double lowest  = kSelf + 2.0 * others * kMin;
+      final double highest = kSelf + 2.0 * others * kMax;
+      final double score   = kSelf + 2.0 * others * mean;
+
+      // sampling without replacement: apply the finite population correction
+      final double variance = n > 1 ? m2 / (n - 1) : Math.pow(kMax - kMin, 2);
+      final double fpc      = others > 1 ? Math.max(0.0, (others - n) / (double) (others - 1)) : 0.0;
+      final double margin   = 2.0 * others * Z * Math.sqrt(variance / n * fpc);
+
+      return new Estimate(
+        source,
+        score,
+        Math.max(lowest, score - margin),
+        Math.min(highest, score + margin),
+        n
+      );
+    }
+
+    @Override public String toString() {
+      return "SampledTypicalityProcessor (smoothingFactor = " + kernel.h
+        + ", budget = " + TimeUnit.NANOSECONDS.toMillis(budgetInNanos) + "ms)";
+    }
+  }
+
+  /**
+   * Range-limited implementation of typicality analysis. It indexes all features in a
+   * {@link VantagePointTree} (by their edit distance), and sums the
+   * {@link SegmentsTypicalityProcessor} kernel contributions only from neighbours within
+   * some radius; i.e., neighbours whose normalized edit distance is at most radius (or
+   * whose similarity score is at least {@code 1 - radius}). A radius of 1 (or more) covers
+   * every neighbour, which yields the scores of {@link SegmentsTypicalityProcessor}.
+   */
+  class NeighbourhoodTypicalityProcessor implements Processor <Feature<String>> {
+    private final double      h;
+    private final double      radius;
+    private final Set<String> relevant;
+
+    /**
+     * Construct a new range-limited Typicality Processor
+     *
+     * @param h smoothing factor
+     * @param radius max normalized distance between neighbours contributing to a score.
+     * @param relevant relevant method names
+     */
+    public NeighbourhoodTypicalityProcessor(double h, double radius, Set<String> relevant){
+      if(radius < 0.0) throw new IllegalArgumentException("Negative radius is not allowed");
+
+      this.h        = h;
+      this.radius   = radius;
+      this.relevant = relevant;
+    }
+
+    @Override public Feature<String> from(Source source) {
+      return new CodeFeature(source, segmentsCode(source, relevant));
+    }
+
+    @Override public List<Source> process(int topK, Set<Source> sources) {
+      if(sources.isEmpty()) return ImmutableList.of();
+      if(topK <= 0)         return ImmutableList.of();
+
+      final Map<Feature<String>, Double> T = typicality(from(sources));
+
+      return T.keySet().stream()
         .sorted((a, b) -> Double.compare(T.get(b), T.get(a)))
         .limit(topK)
+        .map(Feature::source)
         .collect(Collectors.toList());
+    }
 
-      return result.stream()
+    /**
+     * Computes the (range-limited) typicality score of every feature in a set of features.
+     *
+     * @param features all the features in the result set.
+     * @return a map between each feature and its typicality score.
+     */
+    Map<Feature<String>, Double> typicality(Set<Feature<String>> features){
+      final VantagePointTree<Feature<String>> tree = new VantagePointTree<>(
+        features, (a, b) -> editDistance(a.data(), b.data())
+      );
+
+      final double t1  = 1.0d / (features.size() - 1) * Math.sqrt(2.0 * Math.PI);
+      final double t2  = 2.0 * Math.pow(h, 2);
+
+      final Map<Feature<String>, Double> T = new HashMap<>();
+      for(Feature<String> each : features){
+        final int length = each.data().length();
+
+        double Toi = 0.0;
+        for(VantagePointTree.Neighbour<Feature<String>> neighbour : tree.withinRadius(each, editRadius(length))){
+          final Feature<String> other = neighbour.item();
+          if(normalize(neighbour.distance(), length, other.data().length()) > radius) continue;
+
+          final double w = SegmentsTypicalityProcessor.gaussianKernel(t1, t2, new Pair<>(each, other));
+
+          // as in SegmentsTypicalityProcessor, (o, o) is counted once, and (o, p) twice
+          Toi += (other == each ? w : 2.0 * w);
+        }
+
+        T.put(each, Toi);
+      }
+
+      return T;
+    }
+
+    private double editRadius(int length){
+      // a normalized distance of at most radius means an edit distance d of at most
+      // radius * (length + d), since the longest summary is at most (length + d) long.
+      return radius >= 1.0 ? Double.POSITIVE_INFINITY : radius * length / (1.0 - radius);
+    }
+
+    @Override public String toString() {
+      return "NeighbourhoodTypicalityProcessor (smoothingFactor = " + h + ", radius = " + radius + ")";
+    }
+  }
+
+  /**
+   * Two-stage (cascade) implementation of typicality analysis. The first stage ranks the
+   * whole result set using a cheap similarity (token-set Jaccard); the second stage
+   * re-ranks only the top M candidates of the first stage with the exact
+   * {@link SegmentsTypicalityProcessor} kernel.
+   */
+  class CascadeTypicalityProcessor implements Processor <Feature<String>> {
+    private final int                         shortlist;
+    private final SegmentsTypicalityProcessor kernel;
+
+    private final AtomicInteger queries;
+    private final AtomicInteger changes;
+
+    /**
+     * Construct a new Cascade Typicality Processor
+     *
+     * @param shortlist number of candidates (M) re-ranked by the exact kernel.
+     * @param h smoothing factor
+     * @param relevant relevant method names
+     */
+    public CascadeTypicalityProcessor(int shortlist, double h, Set<String> relevant){
+      if(shortlist < 1) throw new IllegalArgumentException("Shortlist must be at least 1");
+
+      this.shortlist  = shortlist;
+      this.kernel     = new SegmentsTypicalityProcessor(h, relevant);
+      this.queries    = new AtomicInteger(0);
+      this.changes    = new AtomicInteger(0);
+    }
+
+    @Override public Feature<String> from(Source source) {
+      return kernel.from(source);
+    }
+
+    @Override public List<Source> process(int topK, Set<Source> sources) {
+      if(sources.isEmpty()) return ImmutableList.of();
+      if(topK <= 0)         return ImmutableList.of();
+
+      final Set<Feature<String>> features = from(sources);
+
+      // stage 1: cheap ranking of the whole result set
+      final Map<Feature<String>, Set<String>> tokens = new HashMap<>();
+      for(Feature<String> each : features){
+        tokens.put(each, Sets.newHashSet((Iterable<String>) new WordIterator(each.data())));
+      }
+
+      final double t1  = 1.0d / (features.size() - 1) * Math.sqrt(2.0 * Math.PI);
+      final double t2  = 2.0 * Math.pow(kernel.h, 2);
+
+      final Map<Feature<String>, Double> T1 = new HashMap<>();
+      for(Feature<String> oi : features){
+        double T = 0.0;
+        for(Feature<String> oj : features){
+          final double score = Similarity.jaccard(tokens.get(oi), tokens.get(oj));
+          T += 2.0 * t1 * Math.exp(-(Math.pow(score, 2) / t2));
+        }
+
+        T1.put(oi, T);
+      }
+
+      final List<Feature<String>> stage1 = T1.keySet().stream()
+        .sorted((a, b) -> Double.compare(T1.get(b), T1.get(a)))
+        .collect(Collectors.toList());
+
+      final int M = Math.min(Math.max(shortlist, topK), stage1.size());
+      final List<Feature<String>> candidates = stage1.subList(0, M);
+
+      // stage 2: exact re-ranking of the shortlist
+      final Map<Feature<String>, Double> T2 = new HashMap<>();
+      for(Feature<String> each : candidates){
+        T2.put(each, kernel.typicality(each, features));
+      }
+
+      final List<Feature<String>> stage2 = candidates.stream()
+        .sorted((a, b) -> Double.compare(T2.get(b), T2.get(a)))
+        .limit(topK)
+        .collect(Collectors.toList());
+
+      queries.incrementAndGet();
+      if(!stage2.equals(stage1.subList(0, Math.min(topK, stage1.size())))){
+        changes.incrementAndGet();
+      }
+
+      return stage2.stream()
         .map(Feature::source)
         .collect(Collectors.toList());
     }
 
+    /**
+     * @return number of typicality queries processed so far.
+     */
+    public int queryCount(){
+      return queries.get();
+    }
 
-    private static double gaussianKernel(double t1, double t2, Pair<String> pair){
-      return t1 * Math.exp(-(Math.pow(score(pair.oi, pair.oj), 2) / t2));
+    /**
+     * @return number of queries where the second stage changed the first stage's answer.
+     */
+    public int changedCount(){
+      return changes.get();
     }
 
-    private static double score(Feature<String> a, Feature<String> b){
-      return similarityScore(a.data(), b.data());
+    /**
+     * @return the fraction of queries where the second stage changed the answer.
+     */
+    public double changeRate(){
+      final int total = queryCount();
+      return total == 0 ? 0.0 : ((double) changedCount()) / total;
     }
 
     @Override public String toString() {
-      return "SegmentsTypicalityProcessor (smoothingFactor = " + h + ")";
+      return "CascadeTypicalityProcessor (shortlist = " + shortlist
+        + ", smoothingFactor = " + kernel.h
+        + ", changed = " + changedCount() + "/" + queryCount() + ")";
+    }
+  }
+
+  /**
+   * Feature based on a source's bag of concepts (tokens), represented as a sparse
+   * term-frequency vector.
+   */
+  class VectorFeature implements Feature <SparseVector> {
+    private final Source       source;
+    private final SparseVector data;
+
+    VectorFeature(Source source, SparseVector data){
+      this.source = source;
+      this.data   = data;
+    }
+
+    @Override public Source source() {
+      return source;
+    }
+
+    @Override public SparseVector data() {
+      return data;
+    }
+  }
+
+  /**
+   * Concept-vector implementation of typicality analysis. Each source is turned into a sparse
+   * TF (or TF-IDF) vector built from the tokens {@link TokenIterator} extracts outside the
+   * source's irrelevant set, and the Gaussian kernel of {@link SegmentsTypicalityProcessor}
+   * is driven by the cosine similarity between these vectors. Term-frequency vectors of
+   * the most recently used sources are cached, so a processor can be reused across queries
+   * without re-parsing those sources.
+   */
+  class ConceptVectorTypicalityProcessor implements Processor <Feature<SparseVector>> {
+    private static final Set<StopWords> STOP_WORDS = EnumSet.of(StopWords.ENGLISH, StopWords.JAVA);
+
+    // default max number of cached term-frequency vectors
+    private static final int CACHE_SIZE = 1024;
+
+    private final double      h;
+    private final boolean     tfidf;
+    private final Set<String> relevant;
+
+    private final Vocabulary                          vocabulary;
+    private final LoadingCache<Source, SparseVector>  cache;
+
+    /**
+     * Construct a new Concept-vector Typicality Processor
+     *
+     * @param h smoothing factor
+     * @param tfidf true if term frequencies should be weighted by their inverse
+     *              document frequency in the result set; false otherwise.
+     * @param relevant relevant method names
+     */
+    public ConceptVectorTypicalityProcessor(double h, boolean tfidf, Set<String> relevant){
+      this(h, tfidf, relevant, CACHE_SIZE);
+    }
+
+    /**
+     * Construct a new Concept-vector Typicality Processor
+     *
+     * @param h smoothing factor
+     * @param tfidf true if term frequencies should be weighted by their inverse
+     *              document frequency in the result set; false otherwise.
+     * @param relevant relevant method names
+     * @param cacheSize max number of cached term-frequency vectors.
+     */
+    public ConceptVectorTypicalityProcessor(double h, boolean tfidf, Set<String> relevant,
+            int cacheSize){
+      if(cacheSize < 0) throw new IllegalArgumentException("Negative cache size is not allowed");
+
+      this.h          = h;
+      this.tfidf      = tfidf;
+      this.relevant   = relevant;
+      this.vocabulary = new Vocabulary();
+      this.cache      = CacheBuilder.newBuilder()
+        .maximumSize(cacheSize)
+        .build(CacheLoader.from(this::termFrequencies));
+    }
+
+    @Override public Feature<SparseVector> from(Source source) {
+      return new VectorFeature(source, cache.getUnchecked(source));
+    }
+
+    private SparseVector termFrequencies(Source source){
+      final UnitLocation unit = locateUnit(source, relevant);
+      if(Objects.isNull(unit)) return SparseVector.empty();
+
+      final ASTNode      unitNode = unit.getUnitNode();
+      final List<String> tokens   = UnitAnalysis.of(unitNode).tokensOf(unitNode, generateIrrelevantSet(unit));
+
+      final Map<Integer, Integer> frequencies = new HashMap<>();
+      for(String each : tokens){
+        if(StopWords.isStopWord(STOP_WORDS, each)) continue;
+        frequencies.merge(vocabulary.idOf(each), 1, Integer::sum);
+      }
+
+      return SparseVector.of(frequencies);
+    }
+
+    @Override public List<Source> process(int topK, Set<Source> sources) {
+      if(sources.isEmpty()) return ImmutableList.of();
+      if(topK <= 0)         return ImmutableList.of();
+
+      final List<Feature<SparseVector>> features = new ArrayList<>(from(sources));
+      final List<SparseVector>          vectors  = tfidf
+        ? weighted(features)
+        : features.stream().map(Feature::data).collect(Collectors.toList());
+
+      final double t1  = 1.0d / (features.size() - 1) * Math.sqrt(2.0 * Math.PI);
+      final double t2  = 2.0 * Math.pow(h, 2);
+
+      // the kernel is symmetric, so each unordered pair is scored once; as in
+      // SegmentsTypicalityProcessor, (o, o) is counted once, and (o, p) twice.
+      final double[] T = new double[features.size()];
+      for(int i = 0; i < vectors.size(); i++){
+        for(int j = i; j < vectors.size(); j++){
+          final double s = vectors.get(i).cosine(vectors.get(j));
+          final double w = t1 * Math.exp(-(Math.pow(s, 2) / t2));
+
+          if(i == j){
+            T[i] += w;
+          } else {
+            T[i] += 2.0 * w;
+            T[j] += 2.0 * w;
+          }
+        }
+      }
+
+      final List<Integer> ranking = new ArrayList<>();
+      for(int idx = 0; idx < T.length; idx++){
+        ranking.add(idx);
+      }
+
+      return ranking.stream()
+        .sorted((a, b) -> Double.compare(T[b], T[a]))
+        .limit(topK)
+        .map(idx -> features.get(idx).source())
+        .collect(Collectors.toList());
+    }
+
+    private static List<SparseVector> weighted(List<Feature<SparseVector>> features){
+      final Map<Integer, Integer> documentFrequencies = new HashMap<>();
+      for(Feature<SparseVector> each : features){
+        for(int term : each.data().terms()){
+          documentFrequencies.merge(term, 1, Integer::sum);
+        }
+      }
+
+      final double N = features.size();
+      return features.stream()
+        .map(f -> f.data().scale(term -> Math.log(1.0 + N / documentFrequencies.get(term))))
+        .collect(Collectors.toList());
+    }
+
+    /**
+     * @return number of sources whose term-frequency vectors have been cached.
+     */
+    public int cachedCount(){
+      return (int) cache.size();
+    }
+
+    @Override public String toString() {
+      return "ConceptVectorTypicalityProcessor (smoothingFactor = " + h
+        + ", weighting = " + (tfidf ? "tf-idf" : "tf") + ")";
     }
   }
 
@@ -9,6 +9,7 @@ import com.vesperin.cue.Cue;
 import com.vesperin.cue.Introspector;
 import com.vesperin.cue.IntrospectorWithCli;
 import com.vesperin.cue.utils.IO;
+import com.vesperin.cue.utils.KMedoids;
 import com.vesperin.cue.utils.Sources;
 
 import javax.inject.Inject;
@@ -18,6 +19,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -31,6 +33,9 @@ import static com.vesperin.cue.IntrospectorWithCli.allNull;
 @Command(name = "represent", description = "Find most representative object in set")
 public class RepresentativeAnalysisCommand implements IntrospectorWithCli.CliCommand {
 
+  private static final String TYPICALITY  = "typicality";
+  private static final String MEDOIDS     = "medoids";
+
   @Inject
   HelpOption<TypicalityAnalysisCommand> help;
 
@@ -43,6 +48,14 @@ public class RepresentativeAnalysisCommand implements IntrospectorWithCli.CliCom
   @Option(name = {"-d", "--directory"}, arity = 1, description = "directory containing files to check.")
   private String directory = null;
 
+  @SuppressWarnings("FieldCanBeLocal")
+  @Option(name = {"-e", "--engine"}, arity = 1, description = "representative engine: typicality (default) or medoids.")
+  private String engine = TYPICALITY;
+
+  @SuppressWarnings("FieldCanBeLocal")
+  @Option(name = {"-s", "--seed"}, description = "seed of the medoids engine's sampling.")
+  private long seed = KMedoids.SEED;
+
   @Override public Integer call() throws Exception {
 
     if(!help.showHelpIfRequested()){
@@ -57,6 +70,11 @@ public class RepresentativeAnalysisCommand implements IntrospectorWithCli.CliCom
         return -1;
       }
 
+      if(!TYPICALITY.equals(engine) && !MEDOIDS.equals(engine)) {
+        System.err.println("Please use a valid engine (see -help for information).");
+        return -1;
+      }
+
       final List<Source>  corpus    = new ArrayList<>();
 
 
@@ -95,7 +113,10 @@ public class RepresentativeAnalysisCommand implements IntrospectorWithCli.CliCom
   private void mostRepresentative(Set<String> relevant, List<Source> corpus) {
     final Introspector    cue       = Cue.newIntrospector();
     final Set<Source>     corpusSet = corpus.stream().collect(Collectors.toSet());
-    final Stream<Source>  stream    = cue.representativeTypicalityQuery(corpusSet, relevant).stream();
+    final Stream<Source>  stream    = (MEDOIDS.equals(engine)
+      ? cue.representativeMedoidsQuery(5, corpusSet, relevant, new Random(seed))
+      : cue.representativeTypicalityQuery(corpusSet, relevant)
+    ).stream();
 
     final Optional<Source> optional = stream.findFirst();
     if(optional.isPresent()){
@@ -18,9 +18,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.vesperin.cue.IntrospectorWithCli.allNonNull;
@@ -58,6 +61,10 @@ public class TypicalityAnalysisCommand implements IntrospectorWithCli.CliCommand
   @Option(name = {"-e", "--echo"}, description = "print results on screen.")
   private boolean onScreen = false;
 
+  @SuppressWarnings("FieldCanBeLocal")
+  @Option(name = {"-m", "--budget"}, description = "time budget (in milliseconds); estimates typicality within it.")
+  private long budget = 0;
+
   @Override public Integer call() throws Exception {
     if(!help.showHelpIfRequested()){
       if(allNull(3, directory, from, targets)) {
@@ -70,6 +77,11 @@ public class TypicalityAnalysisCommand implements IntrospectorWithCli.CliCommand
         return -1;
       }
 
+      if(budget < 0) {
+        System.err.println("Please use a valid budget value (see -help for information).");
+        return -1;
+      }
+
       if(allNonNull(3, directory, from, targets)) {
         System.err.println("Please use only one option at a time (not all).");
         return -1;
@@ -117,11 +129,30 @@ public class TypicalityAnalysisCommand implements IntrospectorWithCli.CliCommand
     performTypicalityQuery(corpus, relevant);
   }
 
+  private List<Source> estimatedTypicalityQuery(Introspector cue, Set<Source> corpusSet,
+          Set<String> relevant, Map<Source, Introspector.Estimate> estimates) {
+
+    final List<Introspector.Estimate> found = cue.typicalityQuery(
+      topK, bandwidth, budget, TimeUnit.MILLISECONDS, corpusSet, relevant
+    );
+
+    for(Introspector.Estimate each : found){
+      estimates.put(each.source(), each);
+    }
+
+    return found.stream()
+      .map(Introspector.Estimate::source)
+      .collect(Collectors.toList());
+  }
+
   private void performTypicalityQuery(List<Source> corpus, Set<String> relevant) {
 
     final Introspector cue = Cue.newIntrospector();
     final Set<Source> corpusSet = corpus.stream().collect(Collectors.toSet());
-    final List<Source> result = cue.typicalityQuery(topK, bandwidth, corpusSet, relevant);
+    final Map<Source, Introspector.Estimate> estimates = new HashMap<>();
+    final List<Source> result = budget > 0
+      ? estimatedTypicalityQuery(cue, corpusSet, relevant, estimates)
+      : cue.typicalityQuery(topK, bandwidth, corpusSet, relevant);
     if(result.isEmpty()){
       System.out.println("No typical source code was found.");
     } else {
@@ -147,7 +178,8 @@ public class TypicalityAnalysisCommand implements IntrospectorWithCli.CliCommand
               );
             } else {
               Files.deleteIfExists(newFile);
-              System.out.println(each.getName());
+              // estimates (if any) already start with the source name
+              System.out.println(estimates.containsKey(each) ? estimates.get(each) : each.getName());
               System.out.println(snippet);
               System.out.println();
             }
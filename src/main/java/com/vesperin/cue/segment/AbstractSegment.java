@@ -11,9 +11,9 @@ import java.util.Objects;
  */
 abstract class AbstractSegment implements Segment {
 
-  private final String label;
   private final ASTNode  data;
   private final Location location;
+  private String label;
   private int markState;
 
   /**
@@ -22,16 +22,7 @@ abstract class AbstractSegment implements Segment {
    * @param data Node in a AST.
    */
   AbstractSegment(ASTNode data){
-    this(Objects.requireNonNull(data).toString(), data);
-  }
-
-  /**
-   * Constructs a new AbstractSegment
-   *
-   * @param data Node in a AST.
-   */
-  private AbstractSegment(String label, ASTNode data){
-    this(label, Objects.requireNonNull(data), Locations.locate(data));
+    this(Objects.requireNonNull(data), Locations.locate(data));
   }
 
   /**
@@ -40,10 +31,10 @@ abstract class AbstractSegment implements Segment {
    * @param data Node in a AST.
    * @param location the location of the node in the source file.
    */
-  private AbstractSegment(String label, ASTNode data, Location location){
-    this.label      = label;
+  private AbstractSegment(ASTNode data, Location location){
     this.data       = data;
     this.location   = location;
+    this.label      = null;
     this.markState  = -1;
   }
 
@@ -61,6 +52,11 @@ abstract class AbstractSegment implements Segment {
   public abstract void updateBenefit(double benefit);
 
   @Override public String label() {
+    // flattening a node's subtree is expensive; do it only when asked to
+    if(label == null){
+      label = data.toString();
+    }
+
     return label;
   }
 
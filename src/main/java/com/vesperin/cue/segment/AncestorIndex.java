@@ -0,0 +1,136 @@
+package com.vesperin.cue.segment;
+
+import com.vesperin.cue.spi.Edge;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reachability index of a segmentation graph: every segment keeps the set of its
+ * (immediate or distant) ancestors as a bit set over segment ordinals. Descendant checks
+ * are then a single bit lookup.
+ *
+ * <p>Adding an edge (from, to) adds from, and the ancestors of from, to the ancestors of to
+ * and of every descendant of to; descendants that already have them all are not visited
+ * again. Removing edges or segments drops the index, which is rebuilt on the next
+ * check.</p>
+ *
+ * @author Huascar Sanchez
+ */
+class AncestorIndex {
+  private final SegmentationGraph     graph;
+  private final Map<Segment, Integer> ordinals;
+  private final List<BitSet>          ancestors;
+
+  private boolean valid;
+
+  /**
+   * Constructs an empty ancestor index for a segmentation graph.
+   *
+   * @param graph the indexed graph.
+   */
+  AncestorIndex(SegmentationGraph graph){
+    this.graph      = Objects.requireNonNull(graph);
+    this.ordinals   = new HashMap<>();
+    this.ancestors  = new ArrayList<>();
+    this.valid      = true;
+  }
+
+  /**
+   * Registers a new segment (with no ancestors).
+   *
+   * @param segment the added segment.
+   */
+  void added(Segment segment){
+    if(valid) ordinalOf(segment);
+  }
+
+  /**
+   * Records a new edge in the graph.
+   *
+   * @param from the source segment
+   * @param to the target segment
+   */
+  void linked(Segment from, Segment to){
+    if(valid) link(from, to);
+  }
+
+  /**
+   * Drops the index after edges or segments were removed from the graph.
+   */
+  void invalidate(){
+    valid = false;
+  }
+
+  /**
+   * Checks whether a segment is an (immediate or distant) ancestor of another segment.
+   *
+   * @param ancestor the ancestor segment
+   * @param segment the segment of interest
+   * @return true if there is a path from the ancestor to the segment; false otherwise.
+   */
+  boolean isAncestorOf(Segment ancestor, Segment segment){
+    if(!valid) rebuild();
+
+    final Integer a = ordinals.get(ancestor);
+    final Integer s = ordinals.get(segment);
+
+    return a != null && s != null && ancestors.get(s).get(a);
+  }
+
+  private void rebuild(){
+    ordinals.clear();
+    ancestors.clear();
+
+    for(Segment each : graph.vertexSet()){
+      ordinalOf(each);
+    }
+
+    for(Edge<Segment> each : graph.edgeSet()){
+      link(each.from(), each.to());
+    }
+
+    valid = true;
+  }
+
+  private int ordinalOf(Segment segment){
+    return ordinals.computeIfAbsent(segment, k -> {
+      ancestors.add(new BitSet());
+      return ancestors.size() - 1;
+    });
+  }
+
+  private void link(Segment from, Segment to){
+    final BitSet added = (BitSet) ancestors.get(ordinalOf(from)).clone();
+    added.set(ordinalOf(from));
+
+    final Deque<Segment> stack = new ArrayDeque<>();
+    stack.push(to);
+
+    while(!stack.isEmpty()){
+      final Segment current = stack.pop();
+      final BitSet  known   = ancestors.get(ordinalOf(current));
+
+      // the descendants of a segment have all of its ancestors
+      final BitSet missing = (BitSet) added.clone();
+      missing.andNot(known);
+      if(missing.isEmpty()) continue;
+
+      known.or(missing);
+
+      for(Edge<Segment> each : graph.outgoingEdgesOf(current)){
+        stack.push(each.to());
+      }
+    }
+  }
+
+  @Override public String toString() {
+    return "AncestorIndex (" + ordinals.size() + " segments)";
+  }
+}
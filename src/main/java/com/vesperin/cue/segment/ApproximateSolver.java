@@ -0,0 +1,193 @@
+package com.vesperin.cue.segment;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Approximate precedence-constrained (tree) knapsack for huge units, where the capacity
+ * (a line count) makes the exact DP too expensive.
+ *
+ * <p>Segment weights are scaled into B = ceil(N / epsilon) buckets (at most W) of W / B
+ * lines each, and rounded up, so the exact tree knapsack runs on a capacity of B instead
+ * of W, and every selection stays within the original capacity. Rounding costs less than
+ * one bucket per segment; i.e., the selected benefit is at least the best benefit
+ * achievable within a capacity of (1 - epsilon) * W
+ * (see {@link #epsilon(FrozenSegmentationGraph, int)}).</p>
+ *
+ * <p>If the scaled DP table needed for that guarantee has more than some max number of
+ * cells, it falls back to a greedy pass that keeps segments by benefit/weight ratio, only
+ * ever considering segments whose parent has been kept.</p>
+ *
+ * <p>In both cases, {@link SegmentationSolver#upperBound(FrozenSegmentationGraph, int)} gives an upper bound
+ * (the fractional relaxation, ignoring precedence) of the best achievable benefit.</p>
+ *
+ * @author Huascar Sanchez
+ */
+class ApproximateSolver implements SegmentationSolver {
+  private final double  epsilon;
+  private final long    maxCells;
+
+  /**
+   * Constructs a new approximate solver.
+   *
+   * @param epsilon accuracy; fraction of the capacity that can be lost to rounding.
+   * @param maxCells max number of DP cells (segments * buckets) before falling
+   *                 back to the greedy pass.
+   */
+  ApproximateSolver(double epsilon, long maxCells){
+    if(epsilon <= 0.0 || epsilon >= 1.0)
+      throw new IllegalArgumentException("epsilon must be in (0, 1)");
+    if(maxCells < 1)
+      throw new IllegalArgumentException("maxCells must be at least 1");
+
+    this.epsilon  = epsilon;
+    this.maxCells = maxCells;
+  }
+
+  @Override public BitSet solve(FrozenSegmentationGraph graph, int capacity) {
+    final int N = graph.size();
+    final int W = Math.max(capacity, 0);
+
+    final int buckets = buckets(N, W);
+
+    // epsilon cannot be met within the budget
+    if(!fits(N, buckets)) return greedy(graph, W);
+
+    // the (unscaled) table is small enough already
+    if(buckets >= W) return SegmentationSolver.treeKnapsack().solve(graph, W);
+
+    final double lines  = ((double) W) / buckets;
+    final int[]  scaled = new int[N];
+    for(int idx = 0; idx < N; idx++){
+      scaled[idx] = (int) Math.ceil(Math.ceil(graph.weight(idx)) / lines);
+    }
+
+    final BitSet keep = TreeKnapsackSolver.solve(graph, scaled, buckets);
+
+    // guards against rounding errors in the scaling step
+    return weightOf(graph, keep) <= W ? keep : greedy(graph, W);
+  }
+
+  /**
+   * Returns the accuracy this solver achieves for a given unit; i.e., the fraction of
+   * the capacity that can be lost to rounding. It is at most the requested epsilon,
+   * unless the unit is solved by the greedy pass.
+   *
+   * @param graph the frozen segmentation graph.
+   * @param capacity segmentation factor.
+   * @return N / B; 0 if the weights are not scaled at all, and 1 if the unit is
+   *    solved by the greedy pass (no guarantee).
+   */
+  double epsilon(FrozenSegmentationGraph graph, int capacity){
+    final int N = graph.size();
+    final int W = Math.max(capacity, 0);
+
+    final int buckets = buckets(N, W);
+    if(!fits(N, buckets)) return 1.0;
+
+    return buckets >= W ? 0.0 : ((double) N) / buckets;
+  }
+
+  private int buckets(int N, int W){
+    return (int) Math.min(W, Math.ceil(N / epsilon));
+  }
+
+  private boolean fits(int N, int buckets){
+    // the scaled table has N * (B + 1) cells
+    return ((long) N) * (buckets + 1L) <= maxCells;
+  }
+
+  /**
+   * Computes an upper bound of the best benefit achievable within some capacity;
+   * i.e., the optimum of the fractional knapsack problem over the same segments,
+   * ignoring their precedence constraints.
+   *
+   * @param graph the frozen segmentation graph.
+   * @param capacity segmentation factor.
+   * @return the upper bound.
+   */
+  static double upperBound(FrozenSegmentationGraph graph, int capacity) {
+    final List<Integer> segments = new ArrayList<>();
+    for(int idx = 0; idx < graph.size(); idx++){
+      segments.add(idx);
+    }
+
+    segments.sort(byRatio(graph));
+
+    double bound = 0.0;
+    double left  = Math.max(capacity, 0);
+    for(int each : segments){
+      final double weight = Math.ceil(graph.weight(each));
+      if(weight <= left){
+        bound += graph.benefit(each);
+        left  -= weight;
+      } else {
+        bound += graph.benefit(each) * (left / weight);
+        break;
+      }
+    }
+
+    return bound;
+  }
+
+  private static BitSet greedy(FrozenSegmentationGraph graph, int capacity){
+    final int N = graph.size();
+
+    final List<List<Integer>> children = new ArrayList<>(N);
+    for(int idx = 0; idx < N; idx++){
+      children.add(new ArrayList<>());
+    }
+
+    final PriorityQueue<Integer> available = new PriorityQueue<>(Math.max(N, 1), byRatio(graph));
+    for(int idx = 0; idx < N; idx++){
+      final int parent = graph.parentOf(idx);
+      if(parent < 0){
+        available.add(idx);
+      } else {
+        children.get(parent).add(idx);
+      }
+    }
+
+    final BitSet keep = new BitSet(N);
+
+    double left = capacity;
+    while(!available.isEmpty()){
+      final int    each   = available.poll();
+      final double weight = Math.ceil(graph.weight(each));
+
+      // segments that don't fit take their subtrees with them
+      if(weight > left) continue;
+
+      keep.set(each);
+      left -= weight;
+      available.addAll(children.get(each));
+    }
+
+    return keep;
+  }
+
+  private static double weightOf(FrozenSegmentationGraph graph, BitSet keep){
+    double weight = 0.0;
+    for(int idx = keep.nextSetBit(0); idx >= 0; idx = keep.nextSetBit(idx + 1)){
+      weight += Math.ceil(graph.weight(idx));
+    }
+
+    return weight;
+  }
+
+  private static Comparator<Integer> byRatio(FrozenSegmentationGraph graph){
+    return (a, b) -> Double.compare(ratio(graph, b), ratio(graph, a));
+  }
+
+  private static double ratio(FrozenSegmentationGraph graph, int segment){
+    final double weight = Math.ceil(graph.weight(segment));
+    return weight == 0.0 ? Double.POSITIVE_INFINITY : graph.benefit(segment) / weight;
+  }
+
+  @Override public String toString() {
+    return "ApproximateSolver (epsilon = " + epsilon + ", maxCells = " + maxCells + ")";
+  }
+}
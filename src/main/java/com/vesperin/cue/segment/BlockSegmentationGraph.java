@@ -1,23 +1,20 @@
 package com.vesperin.cue.segment;
 
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
-import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
 import com.vesperin.base.locations.Location;
-import com.vesperin.base.locations.Locations;
 import com.vesperin.cue.spi.AbstractDirectedAcyclicGraph;
 import com.vesperin.cue.spi.DirectedAcyclicGraph;
 import com.vesperin.cue.spi.Edge;
+import org.eclipse.jdt.core.dom.ASTNode;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
 /**
@@ -47,6 +44,10 @@ class BlockSegmentationGraph extends
    */
   private static final int VISIT_COLOR_BLACK = 4;
 
+  // segments are equal iff their AST nodes are the same node
+  private final Map<ASTNode, Segment> index;
+  private final AncestorIndex         ancestors;
+
   /**
    * Constructs an empty block segmentation graph (DAG).
    */
@@ -62,18 +63,62 @@ class BlockSegmentationGraph extends
    */
   private BlockSegmentationGraph(EdgeFactory<Segment, Edge<Segment>> edgeFactory) {
     super(edgeFactory);
+    this.index      = new IdentityHashMap<>();
+    this.ancestors  = new AncestorIndex(this);
+  }
+
+  @Override public boolean addEdge(Segment from, Segment to, double weight) {
+    final boolean added = super.addEdge(from, to, weight);
+    if(added) ancestors.linked(from, to);
+
+    return added;
+  }
+
+  @Override public boolean addVertex(Segment v) {
+    final boolean added = super.addVertex(v);
+    if(added){
+      index.put(v.data(), v);
+      ancestors.added(v);
+    }
+
+    return added;
+  }
+
+  @Override public boolean removeEdge(Edge<Segment> e) {
+    final boolean removed = super.removeEdge(e);
+    if(removed) ancestors.invalidate();
+
+    return removed;
+  }
+
+  @Override public boolean removeVertex(Segment v) {
+    final boolean removed = super.removeVertex(v);
+    if(removed){
+      index.remove(v.data());
+      ancestors.invalidate();
+    }
+
+    return removed;
+  }
+
+  @Override public boolean isDescendantOf(Segment child, Segment parent) {
+    return child != null && parent != null && ancestors.isAncestorOf(parent, child);
   }
 
   @Override public boolean hasCycle() {
     return !findCycles(this).isEmpty();
   }
 
-  @Override public Segment segmentBy(String label) {
+  @Deprecated @Override public Segment segmentBy(String label) {
     return vertexSet().stream()
       .filter(v -> Objects.equals(v.label(), label))
       .findFirst().orElse(null);
   }
 
+  @Override public Segment segmentOf(ASTNode node) {
+    return index.get(node);
+  }
+
   private static List<Edge<Segment>> findCycles(DirectedAcyclicGraph<Segment, Edge<Segment>> graph) {
 
     final List<Edge<Segment>> cycleEdges = new ArrayList<>();
@@ -108,110 +153,16 @@ class BlockSegmentationGraph extends
     v.setMarkState(VISIT_COLOR_BLACK);
   }
 
-  @Override public Segment segmentAt(int n) {
-    return Iterables.get(vertexSet(), n);
-  }
-
-  @Override public Set<Location> irrelevantSet(int capacity) {
-    if(capacity <= 3) return ImmutableSet.of();
-
-    final List<Segment> blackList = generateBlackList(this, capacity);
-
-    return blackList.stream()
-      .map(foldable -> Locations.locate(foldable.data()))
-      .collect(toImmutableSet());
-  }
-
-  /**
-   * Creates a collector that transforms a mutable set into an immutable one.
-   *
-   * @param <T> the type parameter.
-   * @return a new collector object.
-   */
-  private static <T> Collector<T, ?, Set<T>> toImmutableSet() {
-    return Collectors.collectingAndThen(
-      Collectors.toSet(),
-      Collections::unmodifiableSet
-    );
+  @Override public FrozenSegmentationGraph freeze() {
+    return new FrozenSegmentationGraph(this);
   }
 
-  private static List<Segment> generateBlackList(SegmentationGraph graph, int capacity) {
-    final List<Segment> allSegments = graph.vertexSet().stream()
-      .collect(Collectors.toList());
-
-    final int N = allSegments.size();
-
-    // if single Block node, then return empty list
-    if(N == 1) return Lists.newArrayList();
-
-    @SuppressWarnings("UnnecessaryLocalVariable")
-    final int W = capacity;
-
-    double[] profit = new double[N + 1];
-    double[] weight = new double[N + 1];
-
-    // add vertices values
-    for( int n = 1; n <= N; n++){
-      profit[n] = graph.segmentAt(n - 1).benefit();
-      weight[n] = graph.segmentAt(n - 1).weight();
-    }
-
-    double[][]  opt = new double [N + 1][W + 1];
-    boolean[][] sol = new boolean[N + 1][W + 1];
-
-    for(int n = 1; n <= N; n++){
-      for(int w = 1; w <= W; w++){
-        // don't take item n
-        double option1 = opt[n-1][w];
-
-        // take item n
-        double option2 = Double.NEGATIVE_INFINITY;
-        if (weight[n] <= w) {
-          int weightReduction = (int)(w - weight[n]);
-          option2 = profit[n] + opt[n-1][weightReduction];
-        }
-
-        // select better of two options only if there is a precedence relation
-        // between item n and n - 1
-        opt[n][w] = Math.max(option1, option2);
-        sol[n][w] = (option2 > option1) && isPrecedenceConstraintMaintained(opt, n, w, graph);
-      }
-    }
-
-    // determine which items to take
-    boolean[] take = new boolean[N+1];
-    for (int n = N, w = W; n > 0; n--) {
-      if (sol[n][w]) { take[n] = true;  w = (int)(w - weight[n]); }
-      else           { take[n] = false;                    }
-    }
-
-    final Set<Segment> keep = Sets.newLinkedHashSet();
-    for (int n = 1; n <= N; n++) {
-      if (take[n]) {
-        keep.add(graph.segmentAt(n - 1));
-      }
-    }
-
-    allSegments.removeAll(keep);
-
-    return allSegments;
+  @Override public Segment segmentAt(int n) {
+    return Iterables.get(vertexSet(), n);
   }
 
-  private static boolean isPrecedenceConstraintMaintained(double[][] opt, int i, int j, SegmentationGraph graph) {
-
-    final Segment parent = graph.segmentAt(i - 1);
-    final Segment child = (i >= graph.vertexSet().size()
-      ? null
-      : graph.segmentAt(i)
-    );
-
-    // a graph made of a single node implies the following:
-    // - the single node is the root
-    // - no precedence constraints can be enforced since it has not parent and no children
-    final boolean singleNode    = graph.vertexSet().size() == 1;
-    final boolean pass          = singleNode && graph.isRootVertex(parent) && child == null;
-
-    return  (pass) || (opt[i][j] != opt[i - 1][j] && graph.containsEdge(parent, child));
+  @Override public Set<Location> irrelevantSet(int capacity, SegmentationSolver solver) {
+    return freeze().irrelevantSet(capacity, solver);
   }
 
   private static class EdgeFactoryImpl <V extends Segment, E extends Edge<V>> implements EdgeFactory <V, E> {
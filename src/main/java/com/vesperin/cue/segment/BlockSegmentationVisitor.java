@@ -1,11 +1,13 @@
 package com.vesperin.cue.segment;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.vesperin.base.locations.Location;
-import com.vesperin.base.locations.Locations;
 import com.vesperin.base.utils.Jdt;
 import com.vesperin.base.visitors.ASTVisitorWithHierarchicalWalk;
 import com.vesperin.cue.utils.AstUtils;
+import com.vesperin.cue.utils.IntervalIndex;
+import com.vesperin.cue.utils.OccurrenceIndex;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.Block;
 import org.eclipse.jdt.core.dom.CompilationUnit;
@@ -16,8 +18,11 @@ import org.eclipse.jdt.core.dom.SimpleName;
 import org.eclipse.jdt.core.dom.SimpleType;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -26,11 +31,13 @@ import java.util.Set;
  * @author Huascar Sanchez
  */
 public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
-  private final Location scope;
 
-  private final Set<ASTNode> outsiders;
+  private final IntervalIndex scope;
+
+  private final IntervalIndex outsiders;
   private final Set<ASTNode> visited;
   private final BlockSegmentationGraph dag;
+  private final Map<Segment, Integer> unscored;
 
   /**
    * Scoped code segmentation step.
@@ -38,25 +45,25 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
    * @param scope the segmentation boundary.
    */
   public BlockSegmentationVisitor(Location scope){
-    this.scope = Preconditions.checkNotNull(scope);
-    this.outsiders = new HashSet<>();
-    this.visited   = new HashSet<>();
+    this.scope = IntervalIndex.of(Collections.singleton(Preconditions.checkNotNull(scope)));
+    this.outsiders = new IntervalIndex();
+    this.visited   = Collections.newSetFromMap(new IdentityHashMap<>());
     this.dag       = new BlockSegmentationGraph();
+    this.unscored  = new LinkedHashMap<>();
   }
 
 
   @Override public boolean visit(Block node){
-    if(Locations.covers(scope, Locations.locate(node)) || isOutsider(outsiders, node)){
+    if(scope.covers(node) || outsiders.covers(node)){
 
       final ASTNode callingBlock = findParentBlock(node);
 
       if(callingBlock != null){
-        final Segment from = dag.segmentBy(callingBlock.toString());
+        final Segment from = dag.segmentOf(callingBlock);
 
-        Segment to = CodeSegment.of(node);
-        if(dag.containsVertex(to)){
-          to = dag.segmentBy(node.toString());
-        } else {
+        Segment to = dag.segmentOf(node);
+        if(to == null){
+          to = newSegment(node);
           dag.addVertex(to);
         }
 
@@ -66,7 +73,7 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
 
           dag.addEdge(from, to);
 
-          updateSegmentValues(dag, from, to);
+          updateSegmentValues(from, to);
         }
       }
 
@@ -77,19 +84,17 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
   }
 
   @Override public boolean visit(MethodDeclaration node) {
-    if(Locations.covers(scope, Locations.locate(node)) || isOutsider(outsiders, node)){
+    if(scope.covers(node) || outsiders.covers(node)){
       final ASTNode parentBlock = findParentBlock(node);
       if(parentBlock == null){
 
-        final Optional<ASTNode> firstBlock = findFirstBlock(node);
-        if(!firstBlock.isPresent()){
+        final ASTNode firstBlockNode = BlockVisitor.findFirstBlock(node);
+        if(firstBlockNode == null){
           throw new IllegalArgumentException("A method declaration must have a block statement");
         }
 
-        final ASTNode firstBlockNode = firstBlock.get();
-
         if(dag.getRootVertex() == null){
-          dag.addRootVertex(CodeSegment.of(node));
+          dag.addRootVertex(newSegment(node));
         }
 
         catchFirstCodeBlock(node, firstBlockNode);
@@ -105,7 +110,7 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
 
 
   @Override public boolean visit(MethodInvocation node){
-    if(Locations.covers(scope, Locations.locate(node))){
+    if(scope.covers(node)){
       final IMethodBinding methodBinding = node.resolveMethodBinding();
       if(!Objects.isNull(methodBinding)){
         // resolves method declaration
@@ -126,7 +131,7 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
 
 
   @Override public boolean visit(SimpleType node){
-    if(Locations.covers(scope, Locations.locate(node))){
+    if(scope.covers(node)){
 
       if(isTypeDeclarationStatement(node)){
 
@@ -145,10 +150,7 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
 
           Objects.requireNonNull(parentBlock);
 
-          final BlockVisitor blockVisitor = new BlockVisitor();
-          node.accept(blockVisitor);
-
-          for(Block each : blockVisitor.getCodeBlocks()){
+          for(Block each : collectBlocks(node)){
             linkNodes(parentBlock, each);
 
             catchCodeBlock(each);
@@ -184,11 +186,9 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
 
 
   private void catchFirstCodeBlock(ASTNode callingBlock, ASTNode node) {
-    final Optional<ASTNode> optional = findFirstBlock(node);
+    final ASTNode calledBlock = BlockVisitor.findFirstBlock(node);
 
-    if(optional.isPresent()){
-
-      final ASTNode calledBlock  = optional.get();
+    if(calledBlock != null){
 
       if(callingBlock != null){
         // links both nodes
@@ -200,32 +200,24 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
     }
   }
 
-  private static Optional<ASTNode> findFirstBlock(ASTNode node){
-
-    if(node instanceof Block) return Optional.of(node);
-
-    return Jdt.getChildren(node).stream()
-      .filter(n -> (n instanceof Block))
-      .findFirst();
-  }
-
   private void linkNodes(ASTNode callingBlock, ASTNode calledBlock){
     if(calledBlock == callingBlock) return;
-    Segment from;
-    if(dag.containsVertex(CodeSegment.of(callingBlock))){
-      from = dag.segmentBy(callingBlock.toString());
-    } else {
-      from = CodeSegment.of(callingBlock);
+    Segment from = dag.segmentOf(callingBlock);
+    if(from == null){
+      from = newSegment(callingBlock);
       dag.addVertex(from);
     }
 
-    final Segment to = CodeSegment.of(calledBlock);
-    dag.addVertex(to);
+    Segment to = dag.segmentOf(calledBlock);
+    if(to == null){
+      to = newSegment(calledBlock);
+      dag.addVertex(to);
+    }
 
     if(!dag.isDescendantOf(from, to)){
       dag.addEdge(from, to);
 
-      updateSegmentValues(dag, from, to);
+      updateSegmentValues(from, to);
     }
 
     if(!isIncluded(from, to)){
@@ -248,10 +240,9 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
   }
 
   private void catchCodeBlock(ASTNode node){
-    Segment from = CodeSegment.of(node);
-    if(dag.containsVertex(from)){
-      from = dag.segmentBy(node.toString());
-    } else {
+    Segment from = dag.segmentOf(node);
+    if(from == null){
+      from = newSegment(node);
       dag.addVertex(from);
     }
 
@@ -259,10 +250,7 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
       dag.addRootVertex(from);
     }
 
-    final BlockVisitor statements = new BlockVisitor();
-    if(!visited.contains(node)) node.accept(statements);
-
-    final List<Block> children = statements.getCodeBlocks();
+    final List<Block> children = visited.contains(node) ? ImmutableList.of() : blocksOf(node);
 
     for(Block each : children){
       if(visited.contains(each)) continue;
@@ -273,10 +261,9 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
 
       visited.add(each);
 
-      Segment to = CodeSegment.of(each);
-      if(dag.containsVertex(to)){
-        to = dag.segmentBy(each.toString());
-      } else {
+      Segment to = dag.segmentOf(each);
+      if(to == null){
+        to = newSegment(each);
         dag.addVertex(to);
       }
 
@@ -284,7 +271,7 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
       if(!dag.isDescendantOf(from, to)){
         dag.addEdge(from, to);
 
-        updateSegmentValues(dag, from, to);
+        updateSegmentValues(from, to);
       }
 
       each.accept(this);
@@ -292,14 +279,13 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
     }
   }
 
-  private static void updateSegmentValues(SegmentationGraph dag, Segment from, Segment to){
+  private void updateSegmentValues(Segment from, Segment to){
 
-    Segment actualFrom = dag.segmentBy(Objects.requireNonNull(from).label());
-    Segment actualTo   = dag.segmentBy(Objects.requireNonNull(to).label());
+    Segment actualFrom = dag.segmentOf(Objects.requireNonNull(from).data());
+    Segment actualTo   = dag.segmentOf(Objects.requireNonNull(to).data());
 
-    final int depth = actualTo.depth();
-    final CodeSegment castActualTo = ((CodeSegment) actualTo);
-    castActualTo.updateBenefit(actualTo.benefit() + calculateBenefit(actualTo.data(), depth));
+    // benefits are scored once the graph is built (see #scoreSegments())
+    unscored.merge(actualTo, 1, Integer::sum);
 
     // distribute weight among children
     if(isIncluded(actualFrom, actualTo)){ // is a segment (to) included in another segment (from)?
@@ -309,50 +295,94 @@ public class BlockSegmentationVisitor extends ASTVisitorWithHierarchicalWalk {
     }
   }
 
-  private static boolean isIncluded(Segment whole, Segment part){
-    return Locations.covers(locates(whole), locates(part));
+  private void scoreSegments(){
+    if(unscored.isEmpty()) return;
+
+    // a segment's benefit depends only on its node and depth, so it is scored once,
+    // no matter how many edges point to it
+    for(Map.Entry<Segment, Integer> each : unscored.entrySet()){
+      final CodeSegment segment = (CodeSegment) each.getKey();
+      final double      benefit = calculateBenefit(segment.data(), segment.depth());
+
+      // one benefit per added edge, summed in the order edges were added
+      double total = segment.benefit();
+      for(int idx = 0; idx < each.getValue(); idx++){
+        total += benefit;
+      }
+
+      segment.updateBenefit(total);
+    }
+
+    unscored.clear();
   }
 
-  private static Location locates(Segment segment){
-    return Locations.locate(segment.data());
+  private static boolean isIncluded(Segment whole, Segment part){
+    // same as Locations.covers(..), minus the locations
+    final ASTNode a = whole.data();
+    final ASTNode b = part.data();
+
+    return a.getStartPosition() <= b.getStartPosition()
+      && (b.getStartPosition() + b.getLength()) <= (a.getStartPosition() + a.getLength() + 1);
   }
 
-  private static double calculateBenefit(ASTNode/*Block*/ node, int depth) {
+  private static Segment newSegment(ASTNode node){
+    final UnitAnalysis.BlockInfo block = UnitAnalysis.of(node).blockOf(node);
+    return block == null ? CodeSegment.of(node) : CodeSegment.of(block);
+  }
 
-    final CompilationUnit root = Jdt.parent(CompilationUnit.class, node);
+  private static List<Block> blocksOf(ASTNode/*Block*/ node){
+    final UnitAnalysis.BlockInfo block = UnitAnalysis.of(node).blockOf(node);
+    if(block != null) return block.blocks();
 
-    double b = 0;
-    final List<ASTNode> children = Jdt.getChildren(node);
-    for(ASTNode each : children){
-      final ElementsVisitor visitor = new ElementsVisitor();
-      each.accept(visitor);
-      final Set<SimpleName> elements = visitor.getNodes();
-      for(SimpleName eachName : elements){
-        final double size = Math.abs(
-          (AstUtils.findByNode(root, eachName).size()) - 1 /*declaration*/
-        );
+    return collectBlocks(node);
+  }
 
-        b += size / depth;
-      }
+  private static List<Block> collectBlocks(ASTNode node){
+    final BlockVisitor statements = BlockVisitor.POOL.acquire();
+    try {
+      node.accept(statements);
+      return ImmutableList.copyOf(statements.getCodeBlocks());
+    } finally {
+      BlockVisitor.POOL.release(statements);
     }
-
-    return b;
   }
 
+  private static double calculateBenefit(ASTNode/*Block*/ node, int depth) {
+
+    final UnitAnalysis.BlockInfo block = UnitAnalysis.of(node).blockOf(node);
+    if(block != null) return block.benefit(depth);
 
-  private static boolean isOutsider(Set<ASTNode> outsiders, ASTNode node){
+    final OccurrenceIndex index = OccurrenceIndex.of(Jdt.parent(CompilationUnit.class, node));
 
-    for(ASTNode each : outsiders){
-      if(Locations.covers(Locations.locate(each), Locations.locate(node))
-        || outsiders.contains(node)) {
-        return true;
+    final List<?> children = node instanceof Block
+      ? ((Block) node).statements()
+      : Jdt.getChildren(node);
+
+    double b = 0;
+    final ElementsVisitor visitor = ElementsVisitor.POOL.acquire();
+    try {
+      for(Object each : children){
+        visitor.reset();
+        ((ASTNode) each).accept(visitor);
+        final Set<SimpleName> elements = visitor.getNodes();
+        for(SimpleName eachName : elements){
+          final double size = Math.abs(
+            (index.countOf(eachName)) - 1 /*declaration*/
+          );
+
+          b += size / depth;
+        }
       }
+    } finally {
+      ElementsVisitor.POOL.release(visitor);
     }
 
-    return false;
+    return b;
   }
 
+
   public SegmentationGraph getBlockSegmentationGraph(){
+    scoreSegments();
     return dag;
   }
 }
@@ -1,118 +1,126 @@
 package com.vesperin.cue.segment;
 
-import com.vesperin.base.utils.Jdt;
 import com.vesperin.base.visitors.SkeletalVisitor;
 import org.eclipse.jdt.core.dom.*;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
 
 /**
  * @author Huascar Sanchez
  */
 public class BlockVisitor extends SkeletalVisitor {
-  private List<Block> blocks;
-  private Set<Block>  visited;
+  static final ScratchPool<BlockVisitor> POOL = new ScratchPool<>(
+    BlockVisitor::new, BlockVisitor::reset
+  );
+
+  private final List<Block> blocks;
+  private final Set<Block>  visited;
 
   /**
    * Construct a Statement Iterator.
    */
   public BlockVisitor(){
-    blocks = new ArrayList<>();
-    visited    = new HashSet<>();
+    blocks  = new ArrayList<>();
+    visited = Collections.newSetFromMap(new IdentityHashMap<>());
+  }
+
+  /**
+   * Clears the blocks collected so far, so this visitor can be reused.
+   */
+  public void reset(){
+    blocks.clear();
+    visited.clear();
   }
 
   @Override public boolean visit(Block node){
-    if(!visited.contains(node)){
+    if(visited.add(node)){
       blocks.add(node);
-      visited.add(node);
 
-      for(ASTNode eachChild : Jdt.getChildren(node)){
-        eachChild.accept(this);
+      for(Object eachChild : node.statements()){
+        ((ASTNode) eachChild).accept(this);
       }
     }
     return super.visit(node);
   }
 
   @Override public boolean visit(DoStatement node){
-    final Optional<Block> firstBlock = findFirstBlock(node);
-    if(firstBlock.isPresent()){
-      firstBlock.get().accept(this);
-    }
+    visitFirstBlock(node);
     return super.visit(node);
   }
 
   @Override public boolean visit(EnhancedForStatement node){
-    final Optional<Block> firstBlock = findFirstBlock(node);
-    if(firstBlock.isPresent()){
-      firstBlock.get().accept(this);
-    }
+    visitFirstBlock(node);
     return super.visit(node);
   }
 
   @Override public boolean visit(ForStatement node){
-    final Optional<Block> firstBlock = findFirstBlock(node);
-    if(firstBlock.isPresent()){
-      firstBlock.get().accept(this);
-    }
+    visitFirstBlock(node);
     return super.visit(node);
   }
 
   @Override public boolean visit(IfStatement node){
-    final Optional<Block> firstBlock = findFirstBlock(node);
-    if(firstBlock.isPresent()){
-      firstBlock.get().accept(this);
-    }
+    visitFirstBlock(node);
     return false;
   }
 
   @Override public boolean visit(SwitchCase node){
-    final Optional<Block> firstBlock = findFirstBlock(node);
-    if(firstBlock.isPresent()){
-      firstBlock.get().accept(this);
-    }
+    visitFirstBlock(node);
     return super.visit(node);
   }
 
   @Override public boolean visit(TryStatement node){
-    final Optional<Block> firstBlock = findFirstBlock(node);
-    if(firstBlock.isPresent()){
-      firstBlock.get().accept(this);
-    }
+    visitFirstBlock(node);
     return super.visit(node);
   }
 
   @Override public boolean visit(TypeDeclarationStatement node){
-    final Optional<Block> firstBlock = findFirstBlock(node);
-    if(firstBlock.isPresent()){
-      firstBlock.get().accept(this);
-    }
+    visitFirstBlock(node);
     return super.visit(node);
   }
 
   @Override public boolean visit(WhileStatement node){
-    final Optional<Block> firstBlock = findFirstBlock(node);
-    if(firstBlock.isPresent()){
-      firstBlock.get().accept(this);
-    }
+    visitFirstBlock(node);
     return super.visit(node);
   }
 
+  private void visitFirstBlock(ASTNode node){
+    final Block firstBlock = findFirstBlock(node);
+    if(firstBlock != null){
+      firstBlock.accept(this);
+    }
+  }
 
-  private static Optional<Block> findFirstBlock(ASTNode node){
-
-    if(node instanceof Block) return Optional.of(((Block)node));
+  /**
+   * Finds the first block of a node: the node itself if it is a block; otherwise,
+   * its first child block (see {@link com.vesperin.base.utils.Jdt#getChildren(ASTNode)}).
+   *
+   * @param node the node of interest.
+   * @return the first block; null if there is none.
+   */
+  static Block findFirstBlock(ASTNode node){
 
-    return Jdt.getChildren(node).stream()
-      .filter(n -> (n instanceof Block))
-      .map(n -> (Block) n).findFirst();
-  }
+    if(node instanceof Block) return (Block) node;
 
+    // scans the node's children in place, rather than collecting them first
+    for(Object each : node.structuralPropertiesForType()){
+      final StructuralPropertyDescriptor property = (StructuralPropertyDescriptor) each;
 
+      if(property.isChildProperty()){
+        final Object child = node.getStructuralProperty(property);
+        if(child instanceof Block) return (Block) child;
+      } else if(property.isChildListProperty()){
+        for(Object child : (List<?>) node.getStructuralProperty(property)){
+          if(child instanceof Block) return (Block) child;
+        }
+      }
+    }
 
+    return null;
+  }
 
   public List<Block> getCodeBlocks(){
     return blocks;
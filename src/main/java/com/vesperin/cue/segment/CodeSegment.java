@@ -39,11 +39,23 @@ class CodeSegment extends AbstractSegment implements Segment {
    * @param benefit the benefit of using this node.
    */
   private CodeSegment(ASTNode data, double weight, double benefit){
+    this(data, weight, benefit, calculateDepth(data));
+  }
+
+  /**
+   * Construct a segment node for a given set of values.
+   *
+   * @param data the AST node
+   * @param weight the weight of this node
+   * @param benefit the benefit of using this node.
+   * @param depth the depth of the AST node.
+   */
+  private CodeSegment(ASTNode data, double weight, double benefit, int depth){
     super(data);
 
     this.weight   = weight;
     this.benefit  = benefit;
-    this.depth    = calculateDepth(data);
+    this.depth    = depth;
   }
 
   /**
@@ -56,6 +68,16 @@ class CodeSegment extends AbstractSegment implements Segment {
     return new CodeSegment(block);
   }
 
+  /**
+   * Create a new code block for an analyzed Block AST Node.
+   *
+   * @param block the analyzed block.
+   * @return a new CodeSegment object.
+   */
+  static CodeSegment of(UnitAnalysis.BlockInfo block){
+    return new CodeSegment(block.node, block.lines, 1.0, block.depth);
+  }
+
   private static double calculateNumberOfLines(ASTNode node) {
     final Location location = Locations.locate(node);
 
@@ -11,7 +11,8 @@ import org.eclipse.jdt.core.dom.SimpleName;
 import org.eclipse.jdt.core.dom.SuperFieldAccess;
 import org.eclipse.jdt.core.dom.SuperMethodInvocation;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -19,12 +20,24 @@ import java.util.Set;
  * @author Huascar Sanchez
  */
 public class ElementsVisitor extends SkeletalVisitor {
+  static final ScratchPool<ElementsVisitor> POOL = new ScratchPool<>(
+    ElementsVisitor::new, ElementsVisitor::reset
+  );
+
   private final Set<SimpleName> nodes;
   private final Set<ASTNode>    visited;
 
   public ElementsVisitor(){
-    this.nodes    = new HashSet<>();
-    this.visited  = new HashSet<>();
+    this.nodes    = Collections.newSetFromMap(new IdentityHashMap<>());
+    this.visited  = Collections.newSetFromMap(new IdentityHashMap<>());
+  }
+
+  /**
+   * Clears the names collected so far, so this visitor can be reused.
+   */
+  public void reset(){
+    nodes.clear();
+    visited.clear();
   }
 
 
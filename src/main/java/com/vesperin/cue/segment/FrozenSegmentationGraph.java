@@ -0,0 +1,283 @@
+package com.vesperin.cue.segment;
+
+import com.google.common.collect.ImmutableSet;
+import com.vesperin.base.Source;
+import com.vesperin.base.locations.Location;
+import com.vesperin.base.locations.Locations;
+import com.vesperin.cue.spi.Edge;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable, array-backed snapshot of a finished {@link SegmentationGraph}. Segments
+ * are indexed by their position in the graph's vertex set, and everything the segmentation
+ * solver needs (weights, benefits, parents, and precedence links) is kept in primitive
+ * arrays.
+ *
+ * <p>A snapshot is detached from the AST: segments are kept as offset ranges (and depths)
+ * in their source file, and their locations are recreated when asked for. Once frozen, the
+ * compilation unit of a graph can be garbage collected, while its irrelevant and relevant
+ * sets can still be answered from the snapshot.</p>
+ *
+ * @author Huascar Sanchez
+ */
+public final class FrozenSegmentationGraph {
+  private final Source     source;
+  private final int[]      starts;
+  private final int[]      ends;
+  private final int[]      depths;
+  private final double[]   weights;
+  private final double[]   benefits;
+  private final int[]      parents;
+  private final int[]      edges;
+  private final boolean[]  linkedToPrevious;
+  private final boolean    singleRoot;
+
+  /**
+   * Freezes a segmentation graph.
+   *
+   * @param graph the segmentation graph to freeze.
+   */
+  FrozenSegmentationGraph(SegmentationGraph graph){
+    Objects.requireNonNull(graph);
+
+    final int N = graph.vertexSet().size();
+
+    final Segment[] segments = graph.vertexSet().toArray(new Segment[N]);
+
+    this.source           = N == 0 ? null : segments[0].location().getSource();
+    this.starts           = new int[N];
+    this.ends             = new int[N];
+    this.depths           = new int[N];
+    this.weights          = new double[N];
+    this.benefits         = new double[N];
+    this.parents          = new int[N];
+    this.linkedToPrevious = new boolean[N];
+
+    final Map<Segment, Integer> positions = new HashMap<>();
+    for(int idx = 0; idx < N; idx++){
+      positions.put(segments[idx], idx);
+    }
+
+    for(int idx = 0; idx < N; idx++){
+      final Segment  each     = segments[idx];
+      final Location location = each.location();
+
+      starts[idx]   = location.getStart().getOffset();
+      ends[idx]     = location.getEnd().getOffset();
+      depths[idx]   = each.depth();
+      weights[idx]  = each.weight();
+      benefits[idx] = each.benefit();
+
+      // first parent (if any) in insertion order
+      parents[idx]  = -1;
+      for(Edge<Segment> edge : graph.incomingEdgesOf(each)){
+        parents[idx] = positions.get(edge.from());
+        break;
+      }
+
+      linkedToPrevious[idx] = idx > 0 && graph.containsEdge(segments[idx - 1], each);
+    }
+
+    // (from, to) pairs, in edge insertion order
+    this.edges = new int[graph.edgeSet().size() * 2];
+
+    int next = 0;
+    for(Edge<Segment> each : graph.edgeSet()){
+      edges[next++] = positions.get(each.from());
+      edges[next++] = positions.get(each.to());
+    }
+
+    this.singleRoot = N == 1 && graph.isRootVertex(segments[0]);
+  }
+
+  /**
+   * @return number of segments in this graph.
+   */
+  public int size(){
+    return weights.length;
+  }
+
+  /**
+   * Gets the location of a segment at a nth position in the graph.
+   *
+   * @param n the index [0, size()-1] of the segment to access
+   * @return the location of the segment at that nth position
+   */
+  public Location locationAt(int n){
+    return Locations.createLocation(source, source.getContent(), starts[n], ends[n]);
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the start offset of the segment at the nth position.
+   */
+  public int start(int n){
+    return starts[n];
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the end offset of the segment at the nth position.
+   */
+  public int end(int n){
+    return ends[n];
+  }
+
+  /**
+   * @return the source file of this graph's segments; null if the graph is empty.
+   */
+  Source source(){
+    return source;
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the depth of the segment at the nth position.
+   */
+  public int depth(int n){
+    return depths[n];
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the weight of the segment at the nth position.
+   */
+  public double weight(int n){
+    return weights[n];
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the benefit of the segment at the nth position.
+   */
+  public double benefit(int n){
+    return benefits[n];
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the index of the segment's first parent; -1 if it has no parent.
+   */
+  public int parentOf(int n){
+    return parents[n];
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return true if there is an edge from the segment at (n - 1) to the segment
+   *  at n; false otherwise.
+   */
+  public boolean isLinkedToPrevious(int n){
+    return n < linkedToPrevious.length && linkedToPrevious[n];
+  }
+
+  /**
+   * @return number of edges in this graph.
+   */
+  public int edgeCount(){
+    return edges.length / 2;
+  }
+
+  /**
+   * @param e the index [0, edgeCount()-1] of the edge of interest
+   * @return the index of the edge's source segment.
+   */
+  public int edgeFrom(int e){
+    return edges[2 * e];
+  }
+
+  /**
+   * @param e the index [0, edgeCount()-1] of the edge of interest
+   * @return the index of the edge's target segment.
+   */
+  public int edgeTo(int e){
+    return edges[2 * e + 1];
+  }
+
+  /**
+   * @return true if this graph is made of a single (root) segment.
+   */
+  public boolean isSingleRoot(){
+    return singleRoot;
+  }
+
+  /**
+   * Returns the non-informative (irrelevant to some capacity) segments
+   * in this graph for the given capacity, as selected by a given solver.
+   *
+   * @param capacity segmentation factor.
+   * @param solver the strategy selecting the segments to keep.
+   * @return a set of segment locations.
+   * @see SegmentationGraph#irrelevantSet(int, SegmentationSolver)
+   */
+  public Set<Location> irrelevantSet(int capacity, SegmentationSolver solver){
+    final BitSet keep = keep(capacity, solver);
+
+    final ImmutableSet.Builder<Location> irrelevant = ImmutableSet.builder();
+    for(int n = keep.nextClearBit(0); n < size(); n = keep.nextClearBit(n + 1)){
+      irrelevant.add(locationAt(n));
+    }
+
+    return irrelevant.build();
+  }
+
+  /**
+   * Returns the non-informative (irrelevant to some capacity) segments
+   * in this graph for the given scope, using the default solver.
+   *
+   * @param forScope the scope from where the capacity is inferred.
+   * @return a set of segment locations.
+   * @see SegmentationGraph#irrelevantSet(Location)
+   */
+  public Set<Location> irrelevantSet(Location forScope){
+    return irrelevantSet(capacityOf(forScope), SegmentationSolver.defaultSolver());
+  }
+
+  /**
+   * Returns the locations of the segments kept (i.e., relevant) for the given scope,
+   * using the default solver.
+   *
+   * @param forScope the scope from where the capacity is inferred.
+   * @return a set of segment locations.
+   */
+  public Set<Location> relevantSet(Location forScope){
+    final BitSet keep = keep(capacityOf(forScope), SegmentationSolver.defaultSolver());
+
+    final ImmutableSet.Builder<Location> relevant = ImmutableSet.builder();
+    for(int n = keep.nextSetBit(0); n >= 0 && n < size(); n = keep.nextSetBit(n + 1)){
+      relevant.add(locationAt(n));
+    }
+
+    return relevant.build();
+  }
+
+  /**
+   * Selects the segments to keep for a given capacity.
+   *
+   * @param capacity segmentation factor.
+   * @param solver the strategy selecting the segments to keep.
+   * @return the indices of the kept segments.
+   */
+  BitSet keep(int capacity, SegmentationSolver solver){
+    final BitSet all = new BitSet(size());
+    all.set(0, size());
+
+    // small scopes and single Block nodes have no irrelevant segments
+    if(capacity <= 3 || size() <= 1) return all;
+
+    return Objects.requireNonNull(solver).solve(this, capacity);
+  }
+
+  static int capacityOf(Location scope){
+    return Math.abs(scope.getEnd().getLine() - scope.getStart().getLine()) + 1;
+  }
+
+  @Override public String toString() {
+    return "FrozenSegmentationGraph (" + size() + " segments)";
+  }
+}
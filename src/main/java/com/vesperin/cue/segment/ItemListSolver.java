@@ -0,0 +1,130 @@
+package com.vesperin.cue.segment;
+
+import com.google.common.base.Preconditions;
+
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+/**
+ * 0/1 knapsack over the segments of a graph, taken as a list of items in vertex order.
+ * An item is only taken if there is an edge from its previous item to it.
+ *
+ * <p>Row n of the DP table only depends on row n - 1, so, for large tables, the columns
+ * of each row are filled in parallel chunks. Chunks are aligned to the 64-bit words of
+ * the take/skip bits, so no two chunks write the same word, and the result is the same
+ * as the one of a sequential fill.</p>
+ *
+ * @author Huascar Sanchez
+ */
+class ItemListSolver implements SegmentationSolver {
+  // columns per parallel chunk; a multiple of 64
+  private static final int CHUNK = 64 * 64;
+
+  private final long parallelCells;
+
+  /**
+   * Constructs an item-list solver that fills tables of more than some number of
+   * cells in parallel.
+   *
+   * @param parallelCells the min number of DP cells (segments * capacity) filled in
+   *                      parallel.
+   */
+  ItemListSolver(long parallelCells){
+    Preconditions.checkArgument(parallelCells > 0, "parallelCells must be positive");
+    this.parallelCells = parallelCells;
+  }
+
+  @Override public BitSet solve(FrozenSegmentationGraph graph, int capacity) {
+    final int N = graph.size();
+
+    @SuppressWarnings("UnnecessaryLocalVariable")
+    final int W = capacity;
+
+    double[] profit = new double[N + 1];
+    double[] weight = new double[N + 1];
+
+    // add vertices values
+    for( int n = 1; n <= N; n++){
+      profit[n] = graph.benefit(n - 1);
+      weight[n] = graph.weight(n - 1);
+    }
+
+    // two rolling rows of the DP table, plus one take/skip bit per (item, capacity) pair
+    final int stride = (W + 1 + 63) >>> 6;
+
+    double[] previous = new double[W + 1];
+    double[] current  = new double[W + 1];
+    final long[] sol  = new long[(N + 1) * stride];
+
+    final int chunks = (W + CHUNK) / CHUNK;
+    final boolean parallel = chunks > 1 && ((long) N) * (W + 1L) >= parallelCells;
+
+    for(int n = 1; n <= N; n++){
+      if(parallel){
+        final int      row  = n;
+        final double[] prev = previous;
+        final double[] curr = current;
+
+        IntStream.range(0, chunks).parallel().forEach(c -> fillRow(
+          row, Math.max(1, c * CHUNK), Math.min(W, (c + 1) * CHUNK - 1),
+          profit, weight, prev, curr, sol, stride, graph
+        ));
+      } else {
+        fillRow(n, 1, W, profit, weight, previous, current, sol, stride, graph);
+      }
+
+      final double[] swap = previous;
+      previous = current;
+      current  = swap;
+    }
+
+    // determine which items to take
+    final BitSet take = new BitSet(N);
+    for (int n = N, w = W; n > 0; n--) {
+      if ((sol[n * stride + (w >>> 6)] & (1L << w)) != 0) {
+        take.set(n - 1);
+        w = (int)(w - weight[n]);
+      }
+    }
+
+    return take;
+  }
+
+  private static void fillRow(int n, int from, int to, double[] profit, double[] weight,
+          double[] previous, double[] current, long[] sol, int stride, FrozenSegmentationGraph graph){
+
+    for(int w = from; w <= to; w++){
+      // don't take item n
+      double option1 = previous[w];
+
+      // take item n
+      double option2 = Double.NEGATIVE_INFINITY;
+      if (weight[n] <= w) {
+        int weightReduction = (int)(w - weight[n]);
+        option2 = profit[n] + previous[weightReduction];
+      }
+
+      // select better of two options only if there is a precedence relation
+      // between item n and n - 1
+      current[w] = Math.max(option1, option2);
+      if((option2 > option1) && isPrecedenceConstraintMaintained(current, previous, n, w, graph)){
+        sol[n * stride + (w >>> 6)] |= 1L << w;
+      }
+    }
+  }
+
+  private static boolean isPrecedenceConstraintMaintained(double[] opt, double[] previous, int i,
+          int j, FrozenSegmentationGraph graph) {
+    // a graph made of a single node implies the following:
+    // - the single node is the root
+    // - no precedence constraints can be enforced since it has not parent and no children
+    final boolean pass = graph.isSingleRoot();
+
+    // item i is segment (i - 1); item (i + 1) is segment i
+    return  (pass) || (opt[j] != previous[j] && graph.isLinkedToPrevious(i));
+  }
+
+  @Override public String toString() {
+    return "ItemListSolver";
+  }
+}
@@ -0,0 +1,62 @@
+package com.vesperin.cue.segment;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A per-thread pool of reusable scratch objects (e.g., visitors and their working sets).
+ * Objects are reset when they are released, so an acquired object is always clean.
+ * Acquiring an object while another one is in use (e.g., from a recursive visit) just
+ * takes, or makes, another object.
+ *
+ * @author Huascar Sanchez
+ */
+final class ScratchPool<T> {
+  // max number of idle objects kept per thread
+  private static final int MAX_IDLE = 16;
+
+  private final Supplier<T>            factory;
+  private final Consumer<T>            reset;
+  private final ThreadLocal<Deque<T>>  idle;
+
+  /**
+   * Constructs a new pool.
+   *
+   * @param factory makes new scratch objects.
+   * @param reset resets a released scratch object.
+   */
+  ScratchPool(Supplier<T> factory, Consumer<T> reset){
+    this.factory  = Objects.requireNonNull(factory);
+    this.reset    = Objects.requireNonNull(reset);
+    this.idle     = ThreadLocal.withInitial(ArrayDeque::new);
+  }
+
+  /**
+   * @return a clean scratch object, owned by the caller until it is released.
+   */
+  T acquire(){
+    final T object = idle.get().poll();
+    return object == null ? factory.get() : object;
+  }
+
+  /**
+   * Resets a scratch object and returns it to the pool of this thread.
+   *
+   * @param object the scratch object to release.
+   */
+  void release(T object){
+    reset.accept(object);
+
+    final Deque<T> objects = idle.get();
+    if(objects.size() < MAX_IDLE){
+      objects.push(object);
+    }
+  }
+
+  @Override public String toString() {
+    return "ScratchPool (" + idle.get().size() + " idle)";
+  }
+}
@@ -4,6 +4,7 @@ import com.google.common.collect.Sets;
 import com.vesperin.base.locations.Location;
 import com.vesperin.cue.spi.DirectedAcyclicGraph;
 import com.vesperin.cue.spi.Edge;
+import org.eclipse.jdt.core.dom.ASTNode;
 
 import java.util.Deque;
 import java.util.LinkedList;
@@ -18,12 +19,25 @@ import java.util.stream.Collectors;
 public interface SegmentationGraph extends DirectedAcyclicGraph<Segment, Edge<Segment>> {
 
   /**
-   * Returns the segment matching a label.
+   * Returns the segment matching a label. Labels are neither unique (blocks with the
+   * same code have the same label) nor cheap (each one is a flattened copy of a
+   * segment's AST node, computed the first time it is asked for), and this lookup
+   * scans, and labels, every segment until it finds a match.
    *
    * @param label the matching label
-   * @return the matched segment.
+   * @return the first matched segment; null if no segment matches that label.
+   * @deprecated use {@link #segmentOf(ASTNode)}, which finds a segment by the identity
+   *    of its AST node in constant time.
    */
-  Segment segmentBy(String label);
+  @Deprecated Segment segmentBy(String label);
+
+  /**
+   * Returns the segment wrapping an AST node.
+   *
+   * @param node the AST node of interest
+   * @return the matched segment; null if there is no segment for that node.
+   */
+  Segment segmentOf(ASTNode node);
 
   /**
    * Check whether a child segment is a descendant (immediate or distant) of a
@@ -48,6 +62,7 @@ public interface SegmentationGraph extends DirectedAcyclicGraph<Segment, Edge<Se
         if(Objects.equals(each.from(), parent)) return true;
         if(!visited.contains(each.from())){
           visited.add(each.from());
+          stack.push(each.from());
         }
       }
     }
@@ -63,6 +78,14 @@ public interface SegmentationGraph extends DirectedAcyclicGraph<Segment, Edge<Se
    */
   Segment segmentAt(int n);
 
+  /**
+   * Takes an array-backed snapshot of this graph. Later changes to this graph
+   * are not reflected in the snapshot, and the snapshot keeps no AST nodes.
+   *
+   * @return a new frozen segmentation graph.
+   */
+  FrozenSegmentationGraph freeze();
+
   /**
    * Returns the list of valid locations (i.e., locations we are interested in)
    * for targeted typicality and concept extraction.
@@ -92,7 +115,19 @@ public interface SegmentationGraph extends DirectedAcyclicGraph<Segment, Edge<Se
    * @param capacity segmentation factor.
    * @return a set of segment locations.
    */
-  Set<Location> irrelevantSet(int capacity);
+  default Set<Location> irrelevantSet(int capacity){
+    return irrelevantSet(capacity, SegmentationSolver.defaultSolver());
+  }
+
+  /**
+   * Returns the non-informative (irrelevant to some capacity) segments
+   * in this graph for the given capacity, as selected by a given solver.
+   *
+   * @param capacity segmentation factor.
+   * @param solver the strategy selecting the segments to keep.
+   * @return a set of segment locations.
+   */
+  Set<Location> irrelevantSet(int capacity, SegmentationSolver solver);
 
   /**
    * Returns the non-informative (irrelevant to some capacity) segments
@@ -106,12 +141,26 @@ public interface SegmentationGraph extends DirectedAcyclicGraph<Segment, Edge<Se
    * @return a set of segment locations.
    */
   default Set<Location> irrelevantSet(Location forScope){
+    return irrelevantSet(forScope, SegmentationSolver.defaultSolver());
+  }
+
+  /**
+   * Returns the non-informative (irrelevant to some capacity) segments
+   * in this graph for the given scope, as selected by a given solver.
+   *
+   * @param forScope the scope from where the capacity is inferred.
+   *                 The capacity value is simply our segmentation factor.
+   * @param solver the strategy selecting the segments to keep.
+   * @return a set of segment locations.
+   */
+  default Set<Location> irrelevantSet(Location forScope, SegmentationSolver solver){
     return irrelevantSet(
       (
         Math.abs(
           forScope.getEnd().getLine() - forScope.getStart().getLine()
         ) + 1
-      )
+      ),
+      solver
     );
   }
 
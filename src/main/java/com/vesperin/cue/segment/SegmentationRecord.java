@@ -0,0 +1,367 @@
+package com.vesperin.cue.segment;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.vesperin.base.Source;
+import com.vesperin.base.locations.Location;
+import com.vesperin.base.locations.Locations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A saved segmentation result: a read-only view over a unit's segmentation output, in a
+ * compact and versioned binary format. Records are read in place (e.g., straight from a
+ * memory-mapped file); nothing is copied or parsed up front, other than a fixed-size
+ * header.
+ *
+ * <p>A record stores the segments of a {@link FrozenSegmentationGraph} (offsets, depths,
+ * weights, benefits and first parents), its edges, and the segments kept for the scope it
+ * was segmented for. It also stores a fingerprint of the segmented source, so a record of
+ * a file that has since changed is not mistaken for a current one.</p>
+ *
+ * <p>Layout (big-endian, 8-byte aligned sections):</p>
+ * <pre>
+ *   header     magic (int), version (int), fingerprint (long),
+ *              capacity (int), segments N (int), edges E (int), padding (int)
+ *   weights    double[N]
+ *   benefits   double[N]
+ *   relevant   long[(N + 63) / 64]   (bit n is set if segment n was kept)
+ *   starts     int[N]
+ *   ends       int[N]
+ *   depths     int[N]
+ *   parents    int[N]
+ *   edges      int[2 * E]            ((from, to) pairs)
+ * </pre>
+ *
+ * @author Huascar Sanchez
+ */
+public final class SegmentationRecord {
+  /** "CUSG" */
+  static final int MAGIC    = 0x43555347;
+  static final int VERSION  = 1;
+
+  private static final int HEADER = 32;
+
+  private final ByteBuffer buffer;
+  private final int        size;
+  private final int        edgeCount;
+
+  private final int        weights;
+  private final int        benefits;
+  private final int        relevant;
+  private final int        starts;
+  private final int        ends;
+  private final int        depths;
+  private final int        parents;
+  private final int        edges;
+
+  /**
+   * Constructs a view over an encoded record.
+   *
+   * @param buffer the buffer holding the record, at position 0.
+   */
+  private SegmentationRecord(ByteBuffer buffer){
+    this.buffer = buffer;
+
+    Preconditions.checkArgument(buffer.limit() >= HEADER, "Not a segmentation record");
+    Preconditions.checkArgument(buffer.getInt(0) == MAGIC, "Not a segmentation record");
+    Preconditions.checkArgument(
+      buffer.getInt(4) == VERSION,
+      "Unsupported segmentation record version: %s", buffer.getInt(4)
+    );
+
+    this.size       = buffer.getInt(20);
+    this.edgeCount  = buffer.getInt(24);
+
+    Preconditions.checkArgument(size >= 0 && edgeCount >= 0, "Corrupted segmentation record");
+    Preconditions.checkArgument(
+      buffer.limit() >= HEADER + 32L * size + 8L * words(size) + 8L * edgeCount,
+      "Truncated segmentation record"
+    );
+
+    this.weights    = HEADER;
+    this.benefits   = weights + 8 * size;
+    this.relevant   = benefits + 8 * size;
+    this.starts     = relevant + 8 * words(size);
+    this.ends       = starts + 4 * size;
+    this.depths     = ends + 4 * size;
+    this.parents    = depths + 4 * size;
+    this.edges      = parents + 4 * size;
+  }
+
+  /**
+   * Reads a record from a buffer. The buffer's content is not copied, so it must not be
+   * changed while the record is in use.
+   *
+   * @param buffer the buffer holding the record, starting at its current position.
+   * @return a view over the record.
+   * @throws IllegalArgumentException if the buffer does not hold a record of a supported
+   *    version.
+   */
+  public static SegmentationRecord of(ByteBuffer buffer){
+    return new SegmentationRecord(
+      Objects.requireNonNull(buffer).slice().order(ByteOrder.BIG_ENDIAN)
+    );
+  }
+
+  /**
+   * Reads a record from a file, by mapping the file into memory.
+   *
+   * @param file the file holding the record.
+   * @return a view over the record.
+   */
+  public static SegmentationRecord read(Path file){
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Encodes the segmentation result of a unit: its frozen graph, and the segments
+   * kept for a scope (see {@link FrozenSegmentationGraph#relevantSet(Location)}).
+   *
+   * @param graph the frozen segmentation graph of the unit.
+   * @param scope the scope from where the capacity is inferred.
+   * @return a new buffer (flipped, ready to be read or written).
+   */
+  public static ByteBuffer encode(FrozenSegmentationGraph graph, Location scope){
+    final int    capacity = FrozenSegmentationGraph.capacityOf(Objects.requireNonNull(scope));
+    final BitSet keep     = Objects.requireNonNull(graph).keep(
+      capacity, SegmentationSolver.defaultSolver()
+    );
+
+    final int N = graph.size();
+    final int E = graph.edgeCount();
+
+    final int length = HEADER + 16 * N + 8 * words(N) + 16 * N + 8 * E;
+
+    final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.BIG_ENDIAN);
+
+    buffer.putInt(MAGIC)
+      .putInt(VERSION)
+      .putLong(N == 0 ? 0L : fingerprint(graph.source().getContent()))
+      .putInt(capacity)
+      .putInt(N)
+      .putInt(E)
+      .putInt(0);
+
+    for(int n = 0; n < N; n++) buffer.putDouble(graph.weight(n));
+    for(int n = 0; n < N; n++) buffer.putDouble(graph.benefit(n));
+
+    final long[] bits = keep.toLongArray();
+    for(int w = 0; w < words(N); w++){
+      buffer.putLong(w < bits.length ? bits[w] : 0L);
+    }
+
+    for(int n = 0; n < N; n++) buffer.putInt(graph.start(n));
+    for(int n = 0; n < N; n++) buffer.putInt(graph.end(n));
+    for(int n = 0; n < N; n++) buffer.putInt(graph.depth(n));
+    for(int n = 0; n < N; n++) buffer.putInt(graph.parentOf(n));
+
+    for(int e = 0; e < E; e++){
+      buffer.putInt(graph.edgeFrom(e)).putInt(graph.edgeTo(e));
+    }
+
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Encodes the segmentation result of a unit, and writes it to a file.
+   *
+   * @param graph the frozen segmentation graph of the unit.
+   * @param scope the scope from where the capacity is inferred.
+   * @param file the file to write.
+   * @see #encode(FrozenSegmentationGraph, Location)
+   */
+  public static void write(FrozenSegmentationGraph graph, Location scope, Path file){
+    final ByteBuffer buffer = encode(graph, scope);
+
+    try (FileChannel channel = FileChannel.open(file,
+      StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+      while(buffer.hasRemaining()){
+        channel.write(buffer);
+      }
+
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Computes the fingerprint (a 64-bit FNV-1a hash) of some source code.
+   *
+   * @param content the source code.
+   * @return its fingerprint.
+   */
+  static long fingerprint(String content){
+    long hash = 0xcbf29ce484222325L;
+    for(int idx = 0; idx < content.length(); idx++){
+      hash ^= content.charAt(idx);
+      hash *= 0x100000001b3L;
+    }
+
+    return hash;
+  }
+
+  /**
+   * Checks whether this record was made from a given source (i.e., the source has not
+   * changed since).
+   *
+   * @param source the source of interest
+   * @return true if it was; false otherwise.
+   */
+  public boolean matches(Source source){
+    return size == 0 || buffer.getLong(8) == fingerprint(source.getContent());
+  }
+
+  /**
+   * @return the capacity (segmentation factor) of the recorded scope.
+   */
+  public int capacity(){
+    return buffer.getInt(16);
+  }
+
+  /**
+   * @return number of segments in this record.
+   */
+  public int size(){
+    return size;
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the weight of the segment at the nth position.
+   */
+  public double weight(int n){
+    return buffer.getDouble(weights + 8 * Preconditions.checkElementIndex(n, size));
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the benefit of the segment at the nth position.
+   */
+  public double benefit(int n){
+    return buffer.getDouble(benefits + 8 * Preconditions.checkElementIndex(n, size));
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return true if the segment at the nth position was kept; false otherwise.
+   */
+  public boolean isRelevant(int n){
+    Preconditions.checkElementIndex(n, size);
+    return (buffer.getLong(relevant + 8 * (n >>> 6)) & (1L << n)) != 0;
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the start offset of the segment at the nth position.
+   */
+  public int start(int n){
+    return buffer.getInt(starts + 4 * Preconditions.checkElementIndex(n, size));
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the end offset of the segment at the nth position.
+   */
+  public int end(int n){
+    return buffer.getInt(ends + 4 * Preconditions.checkElementIndex(n, size));
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the depth of the segment at the nth position.
+   */
+  public int depth(int n){
+    return buffer.getInt(depths + 4 * Preconditions.checkElementIndex(n, size));
+  }
+
+  /**
+   * @param n the index of the segment of interest
+   * @return the index of the segment's first parent; -1 if it has no parent.
+   */
+  public int parentOf(int n){
+    return buffer.getInt(parents + 4 * Preconditions.checkElementIndex(n, size));
+  }
+
+  /**
+   * @return number of edges in this record.
+   */
+  public int edgeCount(){
+    return edgeCount;
+  }
+
+  /**
+   * @param e the index of the edge of interest
+   * @return the index of the edge's source segment.
+   */
+  public int edgeFrom(int e){
+    return buffer.getInt(edges + 8 * Preconditions.checkElementIndex(e, edgeCount));
+  }
+
+  /**
+   * @param e the index of the edge of interest
+   * @return the index of the edge's target segment.
+   */
+  public int edgeTo(int e){
+    return buffer.getInt(edges + 8 * Preconditions.checkElementIndex(e, edgeCount) + 4);
+  }
+
+  /**
+   * Returns the locations of the segments kept for the recorded scope.
+   *
+   * @param source the segmented source.
+   * @return a set of segment locations.
+   * @throws IllegalArgumentException if this record was not made from this source.
+   */
+  public Set<Location> relevantSet(Source source){
+    return locations(source, true);
+  }
+
+  /**
+   * Returns the locations of the segments not kept for the recorded scope.
+   *
+   * @param source the segmented source.
+   * @return a set of segment locations.
+   * @throws IllegalArgumentException if this record was not made from this source.
+   */
+  public Set<Location> irrelevantSet(Source source){
+    return locations(source, false);
+  }
+
+  private Set<Location> locations(Source source, boolean relevant){
+    Preconditions.checkArgument(matches(Objects.requireNonNull(source)),
+      "Source has changed since this record was made"
+    );
+
+    final ImmutableSet.Builder<Location> result = ImmutableSet.builder();
+    for(int n = 0; n < size; n++){
+      if(isRelevant(n) == relevant){
+        result.add(Locations.createLocation(source, source.getContent(), start(n), end(n)));
+      }
+    }
+
+    return result.build();
+  }
+
+  private static int words(int bits){
+    return (bits + 63) >>> 6;
+  }
+
+  @Override public String toString() {
+    return "SegmentationRecord (" + size + " segments, " + edgeCount + " edges)";
+  }
+}
@@ -0,0 +1,151 @@
+package com.vesperin.cue.segment;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * Strategy for selecting the segments that fit in some capacity (i.e., the lines of code
+ * a user is willing to read), where a segment can only be selected if its parent
+ * segment is selected as well. Segments left out make up the irrelevant set of a
+ * {@link SegmentationGraph}.
+ *
+ * @author Huascar Sanchez
+ */
+public interface SegmentationSolver {
+  /**
+   * Selects the segments to keep within a given capacity.
+   *
+   * @param graph the frozen segmentation graph.
+   * @param capacity segmentation factor.
+   * @return the indices (positions in the frozen graph) of the segments to keep.
+   */
+  BitSet solve(FrozenSegmentationGraph graph, int capacity);
+
+  /**
+   * The max number of DP cells (segments * capacity) the default solver spends on
+   * a single unit before switching to its approximate solver, and the max number of
+   * cells that approximate solver spends on a (scaled) unit.
+   */
+  long MAX_EXACT_CELLS = 1L << 26;
+
+  /**
+   * The accuracy of the default solver's approximate solver; i.e., the fraction of the
+   * capacity that can be lost to rounding.
+   */
+  double DEFAULT_EPSILON = 0.05;
+
+  /**
+   * The min number of DP cells (segments * capacity) {@link #itemList()} fills in
+   * parallel.
+   */
+  long MIN_PARALLEL_CELLS = 1L << 22;
+
+  /**
+   * The default solver: it solves units of up to {@link #MAX_EXACT_CELLS} cells with
+   * {@link #treeKnapsack()}, and larger (e.g., generated) units with
+   * {@link #approximate(double)} (epsilon = {@link #DEFAULT_EPSILON}). Both solvers keep a segment only if its (first) parent is kept.
+   *
+   * @return the default solver.
+   */
+  static SegmentationSolver defaultSolver(){
+    return bySize(MAX_EXACT_CELLS, treeKnapsack(), approximate(DEFAULT_EPSILON));
+  }
+
+  /**
+   * Creates a solver that treats the graph's segments as a tree (each segment hangs
+   * from its first parent) and solves the precedence-constrained (tree) knapsack
+   * problem exactly, in O(N * W) time.
+   *
+   * @return a new tree-knapsack solver.
+   */
+  static SegmentationSolver treeKnapsack(){
+    return new TreeKnapsackSolver();
+  }
+
+  /**
+   * Creates a solver that treats the graph's segments as a list of items (in vertex
+   * order), and only enforces the precedence between adjacent items. Its selections are
+   * neither optimal nor guaranteed to keep every kept segment's parent; it is only kept
+   * for comparison with {@link #treeKnapsack()}.
+   *
+   * @return a new item-list solver.
+   */
+  static SegmentationSolver itemList(){
+    return itemList(MIN_PARALLEL_CELLS);
+  }
+
+  /**
+   * Creates an item-list solver (see {@link #itemList()}) that fills the rows of DP
+   * tables with at least some number of cells in parallel. Results are the same as the
+   * ones of a sequential fill.
+   *
+   * @param parallelCells the min number of DP cells (segments * capacity) filled in
+   *                      parallel.
+   * @return a new item-list solver.
+   * @throws IllegalArgumentException if parallelCells is less than 1.
+   */
+  static SegmentationSolver itemList(long parallelCells){
+    return new ItemListSolver(parallelCells);
+  }
+
+  /**
+   * Creates an approximate tree-knapsack solver. It scales segment weights into
+   * ceil(N / epsilon) buckets, and falls back to a greedy (benefit/weight) pass when
+   * the scaled DP table would still have more than {@link #MAX_EXACT_CELLS} cells.
+   *
+   * @param epsilon accuracy; fraction of the capacity that can be lost to rounding.
+   * @return a new approximate solver.
+   * @throws IllegalArgumentException if epsilon is not in (0, 1).
+   */
+  static SegmentationSolver approximate(double epsilon){
+    return approximate(epsilon, MAX_EXACT_CELLS);
+  }
+
+  /**
+   * Creates an approximate tree-knapsack solver. Its selections lose at most a fraction
+   * epsilon of the capacity to rounding, unless meeting epsilon takes more than maxCells
+   * cells, in which case it falls back to a greedy (benefit/weight) pass.
+   *
+   * @param epsilon accuracy; fraction of the capacity that can be lost to rounding.
+   * @param maxCells max number of scaled DP cells (segments * buckets) before falling
+   *                 back to a greedy pass.
+   * @return a new approximate solver.
+   * @throws IllegalArgumentException if epsilon is not in (0, 1), or maxCells is
+   *    less than 1.
+   */
+  static SegmentationSolver approximate(double epsilon, long maxCells){
+    return new ApproximateSolver(epsilon, maxCells);
+  }
+
+  /**
+   * Creates a solver that routes units by size: units whose DP table (segments * capacity)
+   * has at most maxCells cells go to one solver; the rest go to another.
+   *
+   * @param maxCells the max number of cells handled by the small solver.
+   * @param small the solver for small units.
+   * @param large the solver for large units.
+   * @return a new size-routing solver.
+   */
+  static SegmentationSolver bySize(long maxCells, SegmentationSolver small, SegmentationSolver large){
+    Objects.requireNonNull(small);
+    Objects.requireNonNull(large);
+
+    return (graph, capacity) -> (((long) graph.size()) * (capacity + 1L) <= maxCells
+      ? small
+      : large
+    ).solve(graph, capacity);
+  }
+
+  /**
+   * Computes an upper bound of the best benefit any solver can select within some
+   * capacity; i.e., the optimum of the fractional knapsack problem over the same segments,
+   * ignoring their precedence constraints.
+   *
+   * @param graph the frozen segmentation graph.
+   * @param capacity segmentation factor.
+   * @return the upper bound.
+   */
+  static double upperBound(FrozenSegmentationGraph graph, int capacity){
+    return ApproximateSolver.upperBound(graph, capacity);
+  }
+}
@@ -0,0 +1,165 @@
+package com.vesperin.cue.segment;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+
+/**
+ * Precedence-constrained (tree) knapsack over the segments of a graph: a segment can only be
+ * kept if its (first) parent is kept as well. Segments are laid out in DFS preorder, so the
+ * subtree of the segment at position k spans positions [k, skip(k)), and
+ *
+ * <pre>
+ *   D[k][w] = max(D[skip(k)][w], benefit(k) + D[k + 1][w - weight(k)])
+ * </pre>
+ *
+ * is the best benefit of the positions from k onward within capacity w. Only the DP rows
+ * still referenced by earlier positions are kept alive, and take/skip decisions are kept
+ * as bits.
+ *
+ * @author Huascar Sanchez
+ */
+class TreeKnapsackSolver implements SegmentationSolver {
+
+  @Override public BitSet solve(FrozenSegmentationGraph graph, int capacity) {
+    // weights are line counts; rounding up keeps every selection within capacity
+    final int[] weight = new int[graph.size()];
+    for(int idx = 0; idx < weight.length; idx++){
+      weight[idx] = (int) Math.ceil(graph.weight(idx));
+    }
+
+    return solve(graph, weight, capacity);
+  }
+
+  /**
+   * Solves the tree knapsack problem using the given integer weights
+   * instead of the graph's weights.
+   *
+   * @param graph the frozen segmentation graph.
+   * @param weight the weight of each segment in the graph.
+   * @param capacity the capacity, in the same unit as the weights.
+   * @return the indices of the segments to keep.
+   */
+  static BitSet solve(FrozenSegmentationGraph graph, int[] weight, int capacity) {
+    final int N = graph.size();
+    final int W = Math.max(capacity, 0);
+
+    final BitSet keep = new BitSet(N);
+    if(N == 0) return keep;
+
+    final int[] order = new int[N];
+    final int[] skip  = new int[N];
+    preorder(graph, order, skip);
+
+    // each row is read by the position before it (k + 1) and by every position skipping to it
+    final int[] references = new int[N + 1];
+    for(int k = 0; k < N; k++){
+      references[k + 1]++;
+      references[skip[k]]++;
+    }
+
+    final int stride = (W + 1 + 63) >>> 6;
+    final long[] sol = new long[N * stride];
+
+    final double[][]      rows = new double[N + 1][];
+    final Deque<double[]> pool = new ArrayDeque<>();
+    rows[N] = new double[W + 1];
+
+    for(int k = N - 1; k >= 0; k--){
+      final int      segment = order[k];
+      final double   benefit = graph.benefit(segment);
+      final double[] taken   = rows[k + 1];
+      final double[] skipped = rows[skip[k]];
+      final double[] row     = pool.isEmpty() ? new double[W + 1] : pool.pop();
+
+      for(int w = 0; w <= W; w++){
+        row[w] = skipped[w];
+
+        if(weight[segment] <= w){
+          final double option = benefit + taken[w - weight[segment]];
+          if(option > row[w]){
+            row[w] = option;
+            sol[k * stride + (w >>> 6)] |= 1L << w;
+          }
+        }
+      }
+
+      rows[k] = row;
+      release(rows, references, pool, k + 1);
+      release(rows, references, pool, skip[k]);
+    }
+
+    // determine which segments to keep
+    for(int k = 0, w = W; k < N;){
+      if((sol[k * stride + (w >>> 6)] & (1L << w)) != 0){
+        keep.set(order[k]);
+        w -= weight[order[k]];
+        k++;
+      } else {
+        k = skip[k];
+      }
+    }
+
+    return keep;
+  }
+
+  private static void release(double[][] rows, int[] references, Deque<double[]> pool, int row){
+    if(--references[row] == 0){
+      pool.push(rows[row]);
+      rows[row] = null;
+    }
+  }
+
+  private static void preorder(FrozenSegmentationGraph graph, int[] order, int[] skip){
+    final int N = graph.size();
+
+    // children lists as linked lists over arrays; built in reverse vertex order, so
+    // pushing them onto the stack in list order visits them in vertex order
+    final int[] firstChild  = new int[N];
+    final int[] nextSibling = new int[N];
+    Arrays.fill(firstChild, -1);
+    for(int idx = 0; idx < N; idx++){
+      final int parent = graph.parentOf(idx);
+      if(parent >= 0){
+        nextSibling[idx]    = firstChild[parent];
+        firstChild[parent]  = idx;
+      }
+    }
+
+    final int[]          position = new int[N];
+    final Deque<Integer> stack    = new ArrayDeque<>();
+    int next = 0;
+    for(int root = 0; root < N; root++){
+      if(graph.parentOf(root) >= 0) continue;
+
+      stack.push(root);
+      while(!stack.isEmpty()){
+        final int current = stack.pop();
+        position[current] = next;
+        order[next++]     = current;
+
+        for(int child = firstChild[current]; child >= 0; child = nextSibling[child]){
+          stack.push(child);
+        }
+      }
+    }
+
+    // subtree sizes, accumulated bottom-up over the preorder
+    final int[] size = new int[N];
+    for(int k = N - 1; k >= 0; k--){
+      size[k] += 1;
+
+      final int parent = graph.parentOf(order[k]);
+      if(parent >= 0) size[position[parent]] += size[k];
+    }
+
+    for(int k = 0; k < N; k++){
+      skip[k] = k + size[k];
+    }
+  }
+
+  @Override public String toString() {
+    return "TreeKnapsackSolver";
+  }
+}
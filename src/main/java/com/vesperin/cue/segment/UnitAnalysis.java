@@ -0,0 +1,395 @@
+package com.vesperin.cue.segment;
+
+import com.google.common.collect.ImmutableList;
+import com.vesperin.base.locations.Location;
+import com.vesperin.cue.text.TokenIterator;
+import com.vesperin.cue.utils.IntervalIndex;
+import com.vesperin.cue.utils.OccurrenceIndex;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.ArrayAccess;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.DoStatement;
+import org.eclipse.jdt.core.dom.EnhancedForStatement;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.Javadoc;
+import org.eclipse.jdt.core.dom.LabeledStatement;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.StructuralPropertyDescriptor;
+import org.eclipse.jdt.core.dom.SuperFieldAccess;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.SwitchCase;
+import org.eclipse.jdt.core.dom.TryStatement;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.WhileStatement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The result of a single pass over a compilation unit, collecting everything segmentation
+ * and concept extraction need from its AST:
+ *
+ * <ul>
+ *   <li>for each block: its depth, its number of lines, its enclosing block, the blocks a
+ *      {@link BlockVisitor} would collect from it, and its benefit numerator (the occurrences
+ *      of the names an {@link ElementsVisitor} would collect from its statements);</li>
+ *   <li>the names in the unit (which also build its {@link OccurrenceIndex}); and</li>
+ *   <li>the candidate names (outside doc comments) for concept extraction, in the order a
+ *      {@link TokenIterator} visits them.</li>
+ * </ul>
+ *
+ * The analysis is built once, and then kept as a property of the compilation unit.
+ *
+ * @author Huascar Sanchez
+ */
+public final class UnitAnalysis {
+  private static final String PROPERTY = UnitAnalysis.class.getName();
+
+  private final Map<ASTNode, BlockInfo>     blocks;
+  private final Map<ASTNode, int[]>         ranges;
+  private final List<SimpleName>            candidates;
+  private final Map<String, List<String>>   tokens;
+
+  /**
+   * Analyzes a compilation unit.
+   *
+   * @param root the compilation unit to analyze.
+   */
+  private UnitAnalysis(CompilationUnit root){
+    this.blocks     = new IdentityHashMap<>();
+    this.ranges     = new IdentityHashMap<>();
+    this.candidates = new ArrayList<>();
+    this.tokens     = new ConcurrentHashMap<>();
+
+    final Pass pass = new Pass();
+    root.accept(pass);
+
+    final OccurrenceIndex index = OccurrenceIndex.of(root, pass.names);
+
+    // names count towards every block between them and the closest cut above them
+    for(Occurrence each : pass.occurrences){
+      final long size = Math.abs(index.countOf(each.name) - 1 /*declaration*/);
+
+      BlockInfo block = each.innermost;
+      for(int idx = 0; idx < each.blocks; idx++){
+        block.benefit += size;
+        block = block.parent;
+      }
+    }
+  }
+
+  /**
+   * Gets the analysis of the compilation unit containing some node.
+   *
+   * @param node any node in the compilation unit.
+   * @return the analysis of this compilation unit.
+   * @throws IllegalArgumentException if the node is not part of a compilation unit.
+   */
+  public static UnitAnalysis of(ASTNode node){
+    final ASTNode root = Objects.requireNonNull(node).getRoot();
+    if(!(root instanceof CompilationUnit)){
+      throw new IllegalArgumentException("node is not part of a compilation unit");
+    }
+
+    return of((CompilationUnit) root);
+  }
+
+  /**
+   * Gets the analysis of a compilation unit.
+   *
+   * @param root the compilation unit.
+   * @return the analysis of this compilation unit.
+   */
+  public static UnitAnalysis of(CompilationUnit root){
+    Objects.requireNonNull(root);
+
+    synchronized (root){
+      UnitAnalysis analysis = (UnitAnalysis) root.getProperty(PROPERTY);
+      if(analysis == null){
+        analysis = new UnitAnalysis(root);
+        root.setProperty(PROPERTY, analysis);
+      }
+
+      return analysis;
+    }
+  }
+
+  /**
+   * Extracts the concept tokens of a unit (i.e., a declaration or the whole compilation
+   * unit), skipping those names within a set of irrelevant locations.
+   *
+   * @param unit the unit node.
+   * @param irrelevantSet set of irrelevant locations.
+   * @return the list of tokens, in the same order a {@link TokenIterator} produces them.
+   */
+  public List<String> tokensOf(ASTNode unit, Set<Location> irrelevantSet){
+    final int[] range = ranges.get(unit);
+    if(range == null){
+      final TokenIterator extractor = new TokenIterator(irrelevantSet);
+      unit.accept(extractor);
+
+      return extractor.getItems();
+    }
+
+    final IntervalIndex blackSet = IntervalIndex.of(irrelevantSet);
+
+    final List<String> result = new ArrayList<>();
+    for(int idx = range[0]; idx < range[1]; idx++){
+      final SimpleName each = candidates.get(idx);
+      if(blackSet.covers(each) || !TokenIterator.isTokenizable(each.getIdentifier())) continue;
+
+      result.addAll(tokens.computeIfAbsent(each.getIdentifier(), TokenIterator::tokensOf));
+    }
+
+    return result;
+  }
+
+  /**
+   * @param block the block node of interest.
+   * @return the analyzed block; null if the node is not a block in this unit.
+   */
+  BlockInfo blockOf(ASTNode block){
+    return blocks.get(block);
+  }
+
+  @Override public String toString() {
+    return "UnitAnalysis (" + blocks.size() + " blocks, " + candidates.size() + " names)";
+  }
+
+  /**
+   * What segmentation needs to know about a block.
+   */
+  static class BlockInfo {
+    final Block     node;
+    final int       depth;
+    final double    lines;
+    final BlockInfo parent;
+
+    List<Block>     blocks;
+    long            benefit;
+
+    BlockInfo(Block node, int depth, double lines, BlockInfo parent){
+      this.node     = node;
+      this.depth    = depth;
+      this.lines    = lines;
+      this.parent   = parent;
+      this.blocks   = ImmutableList.of();
+      this.benefit  = 0;
+    }
+
+    /**
+     * @return the blocks a {@link BlockVisitor} collects from this block, this one included.
+     */
+    List<Block> blocks(){
+      return blocks;
+    }
+
+    /**
+     * @param depth the depth of the segment wrapping this block.
+     * @return the benefit of the names in this block's statements.
+     */
+    double benefit(int depth){
+      return ((double) benefit) / depth;
+    }
+  }
+
+  private static class Occurrence {
+    final SimpleName  name;
+    final BlockInfo   innermost;
+    final int         blocks;
+
+    Occurrence(SimpleName name, BlockInfo innermost, int blocks){
+      this.name       = name;
+      this.innermost  = innermost;
+      this.blocks     = blocks;
+    }
+  }
+
+  private static class Frame {
+    final ASTNode   node;
+    final boolean   javadoc;
+    final int       barrier;
+    final int       firstName;
+
+    List<Block>     collected;    // blocks collected from the children seen so far
+    int             firstBlock;   // range of the first block child in collected
+    int             firstBlockEnd;
+
+    Frame(ASTNode node, boolean javadoc, int barrier, int firstName){
+      this.node           = node;
+      this.javadoc        = javadoc;
+      this.barrier        = barrier;
+      this.firstName      = firstName;
+      this.collected      = null;
+      this.firstBlock     = -1;
+      this.firstBlockEnd  = -1;
+    }
+  }
+
+  private class Pass extends ASTVisitor {
+    final List<SimpleName>  names;
+    final List<Occurrence>  occurrences;
+    final List<BlockInfo>   enclosing;
+    final Deque<Frame>      frames;
+
+    Pass(){
+      super(true);
+
+      this.names        = new ArrayList<>();
+      this.occurrences  = new ArrayList<>();
+      this.enclosing    = new ArrayList<>();
+      this.frames       = new ArrayDeque<>();
+    }
+
+    @Override public boolean preVisit2(ASTNode node) {
+      final Frame   parent  = frames.peek();
+      final boolean javadoc = (parent != null && parent.javadoc) || node instanceof Javadoc;
+
+      // blocks at or above the barrier do not count the names below this node
+      final int barrier = parent == null ? 0 : (isCut(parent.node, node) ? enclosing.size() : parent.barrier);
+
+      if(node instanceof SimpleName){
+        final SimpleName name = (SimpleName) node;
+        names.add(name);
+
+        if(!javadoc){
+          candidates.add(name);
+
+          if(enclosing.size() > barrier){
+            occurrences.add(new Occurrence(
+              name, enclosing.get(enclosing.size() - 1), enclosing.size() - barrier)
+            );
+          }
+        }
+      }
+
+      if(node instanceof Block && !javadoc){
+        final BlockInfo info = new BlockInfo(
+          (Block) node,
+          frames.size(),
+          numberOfLines(node),
+          enclosing.isEmpty() ? null : enclosing.get(enclosing.size() - 1)
+        );
+
+        blocks.put(node, info);
+        enclosing.add(info);
+      }
+
+      frames.push(new Frame(node, javadoc, barrier, candidates.size()));
+
+      return true;
+    }
+
+    @Override public void postVisit(ASTNode node) {
+      final Frame frame = frames.pop();
+      if(frame.javadoc) return;
+
+      if(node instanceof BodyDeclaration || node instanceof CompilationUnit){
+        ranges.put(node, new int[]{frame.firstName, candidates.size()});
+      }
+
+      final List<Block> collected = collected(frame);
+      if(node instanceof Block){
+        enclosing.remove(enclosing.size() - 1);
+        blocks.get(node).blocks = collected;
+      }
+
+      final Frame parent = frames.peek();
+      if(parent == null || collected.isEmpty()) return;
+
+      if(parent.collected == null) parent.collected = new ArrayList<>();
+
+      final boolean first = node instanceof Block && parent.firstBlock < 0;
+      if(first) parent.firstBlock = parent.collected.size();
+      parent.collected.addAll(collected);
+      if(first) parent.firstBlockEnd = parent.collected.size();
+    }
+
+    private double numberOfLines(ASTNode node){
+      final CompilationUnit root = (CompilationUnit) node.getRoot();
+
+      final int start = root.getLineNumber(node.getStartPosition());
+      int end = root.getLineNumber(node.getStartPosition() + node.getLength());
+      if(end < 0) end = root.getLineNumber(node.getStartPosition() + node.getLength() - 1);
+
+      return (Math.abs(end - start) + 1)/*inclusive*/;
+    }
+  }
+
+  /**
+   * Gets the blocks a {@link BlockVisitor} would collect from a node, given the blocks it
+   * collects from each of the node's children.
+   */
+  private static List<Block> collected(Frame frame){
+    final ASTNode     node      = frame.node;
+    final List<Block> children  = frame.collected == null ? ImmutableList.of() : frame.collected;
+
+    if(node instanceof Block){
+      final List<Block> result = new ArrayList<>(children.size() + 1);
+      result.add((Block) node);
+      result.addAll(children);
+
+      return result;
+    }
+
+    final boolean hasFirstBlock = frame.firstBlock >= 0;
+    if(node instanceof IfStatement){
+      // only its first block is visited
+      return hasFirstBlock
+        ? children.subList(frame.firstBlock, frame.firstBlockEnd)
+        : ImmutableList.of();
+    }
+
+    if(hasFirstBlock && frame.firstBlock > 0 && visitsFirstBlockFirst(node)){
+      final List<Block> result = new ArrayList<>(children.size());
+      result.addAll(children.subList(frame.firstBlock, frame.firstBlockEnd));
+      result.addAll(children.subList(0, frame.firstBlock));
+      result.addAll(children.subList(frame.firstBlockEnd, children.size()));
+
+      return result;
+    }
+
+    return children;
+  }
+
+  private static boolean visitsFirstBlockFirst(ASTNode node){
+    return node instanceof DoStatement
+      || node instanceof EnhancedForStatement
+      || node instanceof ForStatement
+      || node instanceof SwitchCase
+      || node instanceof TryStatement
+      || node instanceof TypeDeclarationStatement
+      || node instanceof WhileStatement;
+  }
+
+  /**
+   * Checks whether an {@link ElementsVisitor} stops at the edge from a parent to one of
+   * its children.
+   */
+  private static boolean isCut(ASTNode parent, ASTNode child){
+    final StructuralPropertyDescriptor location = child.getLocationInParent();
+
+    if(parent instanceof FieldAccess)           return location != FieldAccess.NAME_PROPERTY;
+    if(parent instanceof ArrayAccess)           return true;
+    if(parent instanceof MethodInvocation)      return location != MethodInvocation.NAME_PROPERTY
+                                                  && location != MethodInvocation.ARGUMENTS_PROPERTY;
+    if(parent instanceof SuperFieldAccess)      return location != SuperFieldAccess.NAME_PROPERTY;
+    if(parent instanceof SuperMethodInvocation) return location != SuperMethodInvocation.NAME_PROPERTY;
+    if(parent instanceof LabeledStatement)      return location != LabeledStatement.LABEL_PROPERTY;
+
+    return false;
+  }
+}
@@ -1,6 +1,19 @@
 package com.vesperin.cue.spi;
 
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -12,6 +25,16 @@ public abstract class AbstractDirectedAcyclicGraph<V, E extends Edge<V>> impleme
   private final EdgeFactory<V, E>   edgeFactory;
   private final Set<E>              edges;
   private final Set<V>              vertices;
+
+  // per-vertex adjacency: vertex -> (neighbour -> edge)
+  private final Map<V, Map<V, E>>   outgoing;
+  private final Map<V, Map<V, E>>   incoming;
+
+  // a topological order of the vertices (Pearce and Kelly); only meaningful when ordered is true
+  private final Map<V, Integer>     order;
+  private int                       nextOrder;
+  private boolean                   ordered;
+
   private V root;
 
   /**
@@ -32,12 +55,110 @@ public abstract class AbstractDirectedAcyclicGraph<V, E extends Edge<V>> impleme
     this.edgeFactory  = Objects.requireNonNull(edgeFactory);
     this.edges        = new LinkedHashSet<>();
     this.vertices     = new LinkedHashSet<>();
+    this.outgoing     = new HashMap<>();
+    this.incoming     = new HashMap<>();
+    this.order        = new HashMap<>();
+    this.nextOrder    = 0;
+    this.ordered      = true;
 
     if(vertex != null){
       addRootVertex(vertex);
     }
   }
 
+  /**
+   * Inserts a directed edge into the graph. Instead of searching the whole graph
+   * for cycles, it maintains a topological order of the graph's vertices, and only
+   * visits the vertices between the edge's endpoints in that order. See:
+   *
+   * David J. Pearce and Paul H. J. Kelly. 2007. A dynamic topological sort
+   * algorithm for directed acyclic graphs. J. Exp. Algorithmics 11.
+   *
+   * @param from the starting vertex
+   * @param to   the ending vertex
+   * @return true if the edge was added, false otherwise.
+   * @throws IllegalArgumentException if from/to are not vertices in the graph
+   * @throws CycleEdgesException if found a cycle in the graph.
+   */
+  @Override public boolean addEdge(V from, V to) {
+    return addEdge(from, to, 0.0);
+  }
+
+  @Override public boolean addAllEdges(Collection<? extends Edge<V>> edges) {
+    // checks every endpoint up front, so an unknown vertex leaves the graph untouched
+    for (Edge<V> each : edges) {
+      checkEndpoints(each.from(), each.to());
+    }
+
+    // skips incremental maintenance; the order is rebuilt (and checked) once at the end
+    final List<E> added = new ArrayList<>();
+    for (Edge<V> each : edges) {
+      if (!containsEdge(each.from(), each.to())) {
+        final E e = edgeFactory().make(each.from(), each.to(), each.weight());
+
+        link(e);
+        added.add(e);
+      }
+    }
+
+    ordered = reorderAll();
+
+    if (!ordered) {
+      added.forEach(this::removeEdge);
+      ordered = reorderAll();
+
+      throw new CycleEdgesException("Error: A cycle has been formed!");
+    }
+
+    return !added.isEmpty();
+  }
+
+  /**
+   * Inserts a weighted directed edge into the graph, checking for cycles the same way
+   * {@link #addEdge(Object, Object)} does.
+   *
+   * @param from the starting vertex
+   * @param to   the ending vertex
+   * @param weight the edge weight/cost
+   * @return true if the edge was added, false otherwise.
+   * @throws IllegalArgumentException if from/to are not vertices in the graph
+   * @throws CycleEdgesException if found a cycle in the graph.
+   */
+  @Override public boolean addEdge(V from, V to, double weight) {
+    checkEndpoints(from, to);
+
+    if (containsEdge(from, to)) return false;
+
+    return insert(edgeFactory().make(from, to, weight));
+  }
+
+  private boolean insert(E e) {
+    link(e);
+
+    final boolean acyclic = ordered ? reorder(e.from(), e.to()) : reorderAll();
+    if (!acyclic) {
+      // the order was left untouched, so it is still valid once the edge is gone
+      removeEdge(e);
+      throw new CycleEdgesException("Error: A cycle has been formed!");
+    }
+
+    ordered = true;
+    return true;
+  }
+
+  private void link(E e) {
+    edges.add(e);
+    outgoing.get(e.from()).put(e.to(), e);
+    incoming.get(e.to()).put(e.from(), e);
+  }
+
+  private void checkEndpoints(V from, V to) {
+    if (!containsVertex(from))
+      throw new IllegalArgumentException("from is not in graph");
+    if (!containsVertex(to))
+      throw new IllegalArgumentException("to is not in graph");
+  }
+
   @Override public boolean addRootVertex(V v) {
     this.root = v;
 
@@ -49,46 +170,213 @@ public abstract class AbstractDirectedAcyclicGraph<V, E extends Edge<V>> impleme
     return false;
   }
 
+  @Override public boolean addVertex(V v) {
+    Objects.requireNonNull(v);
+
+    if (!vertices.add(v)) return false;
+
+    outgoing.put(v, new LinkedHashMap<>());
+    incoming.put(v, new LinkedHashMap<>());
+    order.put(v, nextOrder++);
+
+    return true;
+  }
+
+  @Override public boolean containsEdge(V sourceVertex, V targetVertex) {
+    return findEdge(sourceVertex, targetVertex) != null;
+  }
+
+  @Override public boolean containsEdge(E e) {
+    return e != null && findEdge(e.from(), e.to()) == e;
+  }
+
   @Override public EdgeFactory<V, E> edgeFactory() {
     return edgeFactory;
   }
 
   @Override public Set<E> edgeSet() {
-    return edges;
+    return new EdgeSet();
+  }
+
+  @Override public E findEdge(V src, V dest) {
+    final Map<V, E> out = outgoing.get(src);
+    return out == null ? null : out.get(dest);
   }
 
   @Override public V getRootVertex() {
     return root;
   }
 
+  @Override public Set<E> incomingEdgesOf(V vertex) {
+    return new EdgeSetView<>(incoming.get(vertex));
+  }
+
+  @Override public int inDegreeOf(V vertex) {
+    final Map<V, E> in = incoming.get(vertex);
+    return in == null ? 0 : in.size();
+  }
 
   @Override public boolean isRootVertex(V vertex) {
     return Objects.equals(vertex, getRootVertex());
   }
 
+  @Override public Set<E> outgoingEdgesOf(V vertex) {
+    return new EdgeSetView<>(outgoing.get(vertex));
+  }
+
+  @Override public int outDegreeOf(V vertex) {
+    final Map<V, E> out = outgoing.get(vertex);
+    return out == null ? 0 : out.size();
+  }
+
+  @Override public boolean removeEdge(V sourceVertex, V targetVertex) {
+    final E e = findEdge(sourceVertex, targetVertex);
+    return e != null && removeEdge(e);
+  }
+
+  @Override public boolean removeEdge(E e) {
+    if (!containsEdge(e)) return false;
+
+    edges.remove(e);
+    outgoing.get(e.from()).remove(e.to());
+    incoming.get(e.to()).remove(e.from());
+
+    return true;
+  }
 
   @Override public boolean removeVertex(V v) {
-    if (!containsVertex(v))
+    // the vertex set's iterator may have dropped v already, but not its edges
+    if (!outgoing.containsKey(v))
       return false;
 
-    vertexSet().remove(v);
+    vertices.remove(v);
+    detach(v);
+    return true;
+  }
+
+  private void detach(V v) {
+    order.remove(v);
     if (v == getRootVertex())
       root = null;
 
     // Remove the edges associated with v
-    for (E each : outgoingEdgesOf(v)) {
-      edgeSet().remove(each);
+    for (E each : outgoing.remove(v).values()) {
+      edges.remove(each);
+      incoming.get(each.to()).remove(v);
+    }
+
+    for (E each : incoming.remove(v).values()) {
+      edges.remove(each);
+      outgoing.get(each.from()).remove(v);
+    }
+  }
+
+  /**
+   * Restores the topological order after inserting the edge (from, to). Only the
+   * vertices ordered between to and from are visited (and possibly reordered).
+   *
+   * @return false if the edge closed a cycle; the order is left untouched then.
+   */
+  private boolean reorder(V from, V to) {
+    final int lowerBound = order.get(to);
+    final int upperBound = order.get(from);
+
+    if (lowerBound > upperBound) return true;
+
+    // vertices reachable from 'to' and ordered before 'from'
+    final List<V> forward = new ArrayList<>();
+    if (!collect(to, upperBound, true, from, forward)) return false;
+
+    // vertices reaching 'from' and ordered after 'to'
+    final List<V> backward = new ArrayList<>();
+    collect(from, lowerBound, false, null, backward);
+
+    final Comparator<V> byOrder = Comparator.comparingInt(order::get);
+    forward.sort(byOrder);
+    backward.sort(byOrder);
+
+    final List<Integer> slots = new ArrayList<>();
+    for (V each : backward) slots.add(order.get(each));
+    for (V each : forward)  slots.add(order.get(each));
+    Collections.sort(slots);
+
+    // backward vertices go first, keeping their relative order; then the forward ones
+    int idx = 0;
+    for (V each : backward) order.put(each, slots.get(idx++));
+    for (V each : forward)  order.put(each, slots.get(idx++));
+
+    return true;
+  }
+
+  private boolean collect(V start, int bound, boolean forward, V target, List<V> visited) {
+    final Set<V>   seen  = new HashSet<>();
+    final Deque<V> stack = new ArrayDeque<>();
+
+    stack.push(start);
+    seen.add(start);
+
+    while (!stack.isEmpty()) {
+      final V current = stack.pop();
+      visited.add(current);
+
+      final Map<V, E> adjacency = (forward ? outgoing : incoming).get(current);
+      for (V next : adjacency.keySet()) {
+        if (next.equals(target)) return false;
+
+        final int rank = order.get(next);
+        final boolean inRange = forward ? rank < bound : rank > bound;
+        if (inRange && seen.add(next)) {
+          stack.push(next);
+        }
+      }
     }
 
-    for (E each : incomingEdgesOf(v)) {
-      edgeSet().remove(each);
+    return true;
+  }
+
+  /**
+   * Recomputes a topological order of the whole graph (Kahn's algorithm).
+   *
+   * @return false if the graph has a cycle; the order is left untouched then.
+   */
+  private boolean reorderAll() {
+    final Map<V, Integer> pending = new HashMap<>();
+    final Deque<V>        ready   = new ArrayDeque<>();
+
+    for (V each : vertices) {
+      final int degree = inDegreeOf(each);
+      pending.put(each, degree);
+      if (degree == 0) ready.add(each);
+    }
+
+    final List<V> sorted = new ArrayList<>(vertices.size());
+    while (!ready.isEmpty()) {
+      final V current = ready.poll();
+      sorted.add(current);
+
+      for (V next : outgoing.get(current).keySet()) {
+        if (pending.merge(next, -1, Integer::sum) == 0) {
+          ready.add(next);
+        }
+      }
+    }
+
+    if (sorted.size() != vertices.size()) return false;
+
+    nextOrder = 0;
+    for (V each : sorted) {
+      order.put(each, nextOrder++);
     }
 
     return true;
   }
 
+  @Override public int size() {
+    return edges.size();
+  }
+
   @Override public Set<V> vertexSet() {
-    return vertices;
+    return new VertexSet();
   }
 
   @Override public String toString() {
@@ -101,4 +389,122 @@ public abstract class AbstractDirectedAcyclicGraph<V, E extends Edge<V>> impleme
     tmp.append(']');
     return tmp.toString();
   }
+
+  /**
+   * The graph's edges; changes made through this set go through the graph's
+   * (overridable) mutators.
+   */
+  private class EdgeSet extends AbstractSet<E> {
+    @Override public Iterator<E> iterator() {
+      final Iterator<E> delegate = edges.iterator();
+
+      return new Iterator<E>() {
+        E last;
+
+        @Override public boolean hasNext() {
+          return delegate.hasNext();
+        }
+
+        @Override public E next() {
+          return (last = delegate.next());
+        }
+
+        @Override public void remove() {
+          if (last == null) throw new IllegalStateException();
+
+          // keeps this iterator valid; removeEdge then drops the rest of the edge
+          delegate.remove();
+          removeEdge(last);
+          last = null;
+        }
+      };
+    }
+
+    @Override public boolean add(E e) {
+      // an edge with the same endpoints and weight is made by the edge factory
+      return addEdge(e.from(), e.to(), e.weight());
+    }
+
+    @Override public boolean contains(Object o) {
+      return edges.contains(o);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public boolean remove(Object o) {
+      // only edges of this graph pass the check, so the cast is safe
+      return edges.contains(o) && removeEdge((E) o);
+    }
+
+    @Override public int size() {
+      return edges.size();
+    }
+  }
+
+  /**
+   * The graph's vertices; changes made through this set go through the graph's
+   * (overridable) mutators.
+   */
+  private class VertexSet extends AbstractSet<V> {
+    @Override public Iterator<V> iterator() {
+      final Iterator<V> delegate = vertices.iterator();
+
+      return new Iterator<V>() {
+        V last;
+
+        @Override public boolean hasNext() {
+          return delegate.hasNext();
+        }
+
+        @Override public V next() {
+          return (last = delegate.next());
+        }
+
+        @Override public void remove() {
+          if (last == null) throw new IllegalStateException();
+
+          // keeps this iterator valid; removeVertex then drops v's edges
+          delegate.remove();
+          removeVertex(last);
+          last = null;
+        }
+      };
+    }
+
+    @Override public boolean add(V v) {
+      return addVertex(v);
+    }
+
+    @Override public boolean contains(Object o) {
+      return vertices.contains(o);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public boolean remove(Object o) {
+      // only vertices of this graph pass the check, so the cast is safe
+      return vertices.contains(o) && removeVertex((V) o);
+    }
+
+    @Override public int size() {
+      return vertices.size();
+    }
+  }
+
+  /**
+   * Read-only view over the edges in a vertex's adjacency map.
+   */
+  private static class EdgeSetView <V, E extends Edge<V>> extends AbstractSet<E> {
+    private final Map<V, E> adjacency;
+
+    EdgeSetView(Map<V, E> adjacency){
+      this.adjacency = adjacency == null ? Collections.emptyMap() : adjacency;
+    }
+
+    @Override public Iterator<E> iterator() {
+      return Collections.unmodifiableCollection(adjacency.values()).iterator();
+    }
+
+    @Override public int size() {
+      return adjacency.size();
+    }
+  }
 }
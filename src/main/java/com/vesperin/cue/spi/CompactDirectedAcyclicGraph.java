@@ -0,0 +1,596 @@
+package com.vesperin.cue.spi;
+
+import com.google.common.base.Preconditions;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable DAG whose vertices are numbered 0..n-1 and whose edges are kept in
+ * compressed sparse row (CSR) arrays: one array of offsets per vertex, and one array of
+ * edge targets (sorted per vertex), plus the same pair of arrays for incoming edges.
+ * An edge then takes a few ints (and its weight), rather than an edge object and its
+ * entries in several hash sets; in and out degrees are an offset subtraction, and edge
+ * lookups are a binary search within a vertex's row.
+ *
+ * <p>Graphs are made with a {@link Builder}, which rejects cycles and computes a
+ * topological order of the vertices once, when the graph is built. Edge objects are
+ * only made (by the graph's {@link EdgeFactory}) when the {@link DirectedAcyclicGraph}
+ * view of the graph asks for them; the graph's mutators are not supported.</p>
+ *
+ * @author Huascar Sanchez
+ */
+public final class CompactDirectedAcyclicGraph<V, E extends Edge<V>> implements DirectedAcyclicGraph<V, E> {
+  private final EdgeFactory<V, E>   edgeFactory;
+  private final List<V>             vertices;
+  private final Map<V, Integer>     indices;
+  private final int                 root;
+
+  // outgoing edges of vertex v: targets[outOffsets[v] .. outOffsets[v + 1])
+  private final int[]               outOffsets;
+  private final int[]               targets;
+  private final double[]            weights;
+
+  // incoming edges of vertex v: sources[inOffsets[v] .. inOffsets[v + 1]), and the
+  // positions of these edges in the outgoing arrays
+  private final int[]               inOffsets;
+  private final int[]               sources;
+  private final int[]               inEdges;
+
+  private final int[]               topologicalOrder;
+
+  private CompactDirectedAcyclicGraph(Builder<V, E> builder){
+    final int N = builder.vertices.size();
+    final int M = builder.edgeCount;
+
+    this.edgeFactory  = builder.edgeFactory;
+    this.vertices     = Collections.unmodifiableList(new ArrayList<>(builder.vertices));
+    this.indices      = new HashMap<>(builder.indices);
+    this.root         = builder.root;
+
+    this.outOffsets   = new int[N + 1];
+    this.targets      = new int[M];
+    this.weights      = new double[M];
+    this.inOffsets    = new int[N + 1];
+    this.sources      = new int[M];
+    this.inEdges      = new int[M];
+
+    for(int e = 0; e < M; e++){
+      outOffsets[builder.from[e] + 1]++;
+      inOffsets[builder.to[e] + 1]++;
+    }
+
+    for(int v = 0; v < N; v++){
+      outOffsets[v + 1] += outOffsets[v];
+      inOffsets[v + 1]  += inOffsets[v];
+    }
+
+    // counting sort of the edges by (from, to), so each row's targets are sorted
+    final int[] byTarget = sortedBy(builder.to, null, N, M);
+    final int[] byEdge   = sortedBy(builder.from, byTarget, N, M);
+
+    final int[] nextIn = Arrays.copyOf(inOffsets, N);
+    for(int k = 0; k < M; k++){
+      final int e    = byEdge[k];
+      final int to   = builder.to[e];
+
+      targets[k]  = to;
+      weights[k]  = builder.weights[e];
+
+      final int slot = nextIn[to]++;
+      sources[slot] = builder.from[e];
+      inEdges[slot] = k;
+    }
+
+    this.topologicalOrder = sort();
+  }
+
+  /**
+   * Creates a builder of a compact DAG.
+   *
+   * @param edgeFactory the factory making the edges of the built graph.
+   * @return a new builder.
+   */
+  public static <V, E extends Edge<V>> Builder<V, E> newBuilder(EdgeFactory<V, E> edgeFactory){
+    return new Builder<>(edgeFactory);
+  }
+
+  /**
+   * Creates a compact copy of a DAG: same vertices (numbered in vertex set order), same
+   * edges, and same root.
+   *
+   * @param graph the DAG to copy.
+   * @return a new compact DAG.
+   */
+  public static <V, E extends Edge<V>> CompactDirectedAcyclicGraph<V, E> copyOf(DirectedAcyclicGraph<V, E> graph){
+    final Builder<V, E> builder = newBuilder(graph.edgeFactory());
+
+    for(V each : graph.vertexSet()){
+      builder.addVertex(each);
+    }
+
+    if(graph.getRootVertex() != null){
+      builder.addRootVertex(graph.getRootVertex());
+    }
+
+    for(E each : graph.edgeSet()){
+      builder.addEdge(each.from(), each.to(), each.weight());
+    }
+
+    return builder.build();
+  }
+
+  /**
+   * @return number of vertices in this graph.
+   */
+  public int vertexCount(){
+    return vertices.size();
+  }
+
+  /**
+   * @param v the index [0, vertexCount()-1] of the vertex to access
+   * @return the vertex at that index.
+   */
+  public V vertexAt(int v){
+    return vertices.get(v);
+  }
+
+  /**
+   * @param vertex the vertex of interest
+   * @return the index of this vertex; -1 if it is not in this graph.
+   */
+  public int indexOf(V vertex){
+    final Integer index = indices.get(vertex);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * @param v the index of the vertex of interest
+   * @return the number of edges going out of this vertex.
+   */
+  public int outDegree(int v){
+    return outOffsets[v + 1] - outOffsets[v];
+  }
+
+  /**
+   * @param v the index of the vertex of interest
+   * @return the number of edges coming into this vertex.
+   */
+  public int inDegree(int v){
+    return inOffsets[v + 1] - inOffsets[v];
+  }
+
+  /**
+   * @param v the index of the vertex of interest
+   * @param k the index [0, outDegree(v)-1] of the outgoing edge of interest
+   * @return the index of the kth successor of this vertex (in increasing index order).
+   */
+  public int successor(int v, int k){
+    return targets[outOffsets[v] + Preconditions.checkElementIndex(k, outDegree(v))];
+  }
+
+  /**
+   * @param v the index of the vertex of interest
+   * @param k the index [0, outDegree(v)-1] of the outgoing edge of interest
+   * @return the weight of the kth outgoing edge of this vertex.
+   */
+  public double successorWeight(int v, int k){
+    return weights[outOffsets[v] + Preconditions.checkElementIndex(k, outDegree(v))];
+  }
+
+  /**
+   * @param v the index of the vertex of interest
+   * @param k the index [0, inDegree(v)-1] of the incoming edge of interest
+   * @return the index of the kth predecessor of this vertex (in increasing index order).
+   */
+  public int predecessor(int v, int k){
+    return sources[inOffsets[v] + Preconditions.checkElementIndex(k, inDegree(v))];
+  }
+
+  /**
+   * Checks whether there is an edge between two vertices.
+   *
+   * @param from the index of the source vertex
+   * @param to the index of the target vertex
+   * @return true if there is an edge from one to the other; false otherwise.
+   */
+  public boolean hasEdge(int from, int to){
+    return edgeIndex(from, to) >= 0;
+  }
+
+  /**
+   * @return the vertex indices of this graph, in topological order (every vertex comes
+   *    after its predecessors).
+   */
+  public int[] topologicalOrder(){
+    return topologicalOrder.clone();
+  }
+
+  /**
+   * @return the vertices of this graph, in topological order.
+   */
+  public List<V> topologicalSort(){
+    return new AbstractList<V>() {
+      @Override public V get(int index) {
+        return vertices.get(topologicalOrder[index]);
+      }
+
+      @Override public int size() {
+        return topologicalOrder.length;
+      }
+    };
+  }
+
+  @Override public boolean addEdge(V from, V to) {
+    throw new UnsupportedOperationException("compact graphs are immutable");
+  }
+
+  @Override public boolean addEdge(V from, V to, double weight) {
+    throw new UnsupportedOperationException("compact graphs are immutable");
+  }
+
+  @Override public boolean addVertex(V v) {
+    throw new UnsupportedOperationException("compact graphs are immutable");
+  }
+
+  @Override public boolean addRootVertex(V v) {
+    throw new UnsupportedOperationException("compact graphs are immutable");
+  }
+
+  @Override public boolean removeEdge(V sourceVertex, V targetVertex) {
+    throw new UnsupportedOperationException("compact graphs are immutable");
+  }
+
+  @Override public boolean removeEdge(E e) {
+    throw new UnsupportedOperationException("compact graphs are immutable");
+  }
+
+  @Override public boolean removeVertex(V v) {
+    throw new UnsupportedOperationException("compact graphs are immutable");
+  }
+
+  @Override public boolean hasCycle() {
+    // cycles are rejected when the graph is built
+    return false;
+  }
+
+  @Override public boolean containsVertex(V v) {
+    return indices.containsKey(v);
+  }
+
+  @Override public boolean containsEdge(V sourceVertex, V targetVertex) {
+    final int from = indexOf(sourceVertex);
+    final int to   = indexOf(targetVertex);
+
+    return from >= 0 && to >= 0 && hasEdge(from, to);
+  }
+
+  @Override public boolean containsEdge(E e) {
+    return e != null && containsEdge(e.from(), e.to());
+  }
+
+  @Override public EdgeFactory<V, E> edgeFactory() {
+    return edgeFactory;
+  }
+
+  @Override public Set<E> edgeSet() {
+    return new EdgeSetView(0, targets.length, null);
+  }
+
+  @Override public E findEdge(V src, V dest) {
+    final int from = indexOf(src);
+    final int to   = indexOf(dest);
+    if(from < 0 || to < 0) return null;
+
+    final int k = edgeIndex(from, to);
+    return k < 0 ? null : edgeFactory.make(src, dest, weights[k]);
+  }
+
+  @Override public V getRootVertex() {
+    return root < 0 ? null : vertices.get(root);
+  }
+
+  @Override public boolean isRootVertex(V vertex) {
+    return root >= 0 && indexOf(vertex) == root;
+  }
+
+  @Override public Set<E> incomingEdgesOf(V vertex) {
+    final int v = checkedIndexOf(vertex);
+    return new EdgeSetView(inOffsets[v], inOffsets[v + 1], inEdges);
+  }
+
+  @Override public Set<E> outgoingEdgesOf(V vertex) {
+    final int v = checkedIndexOf(vertex);
+    return new EdgeSetView(outOffsets[v], outOffsets[v + 1], null);
+  }
+
+  @Override public int inDegreeOf(V vertex) {
+    return inDegree(checkedIndexOf(vertex));
+  }
+
+  @Override public int outDegreeOf(V vertex) {
+    return outDegree(checkedIndexOf(vertex));
+  }
+
+  @Override public int size() {
+    return targets.length;
+  }
+
+  @Override public Set<V> vertexSet() {
+    return new AbstractSet<V>() {
+      @Override public Iterator<V> iterator() {
+        return vertices.iterator();
+      }
+
+      @Override public boolean contains(Object o) {
+        return indices.containsKey(o);
+      }
+
+      @Override public int size() {
+        return vertices.size();
+      }
+    };
+  }
+
+  private int checkedIndexOf(V vertex){
+    final int v = indexOf(Objects.requireNonNull(vertex));
+    if(v < 0) throw new IllegalArgumentException("vertex is not in graph");
+
+    return v;
+  }
+
+  private int edgeIndex(int from, int to){
+    final int k = Arrays.binarySearch(targets, outOffsets[from], outOffsets[from + 1], to);
+    return k < 0 ? -1 : k;
+  }
+
+  private int sourceOf(int k){
+    // the row holding the kth edge
+    int lo = 0;
+    int hi = vertices.size() - 1;
+    while(lo < hi){
+      final int mid = (lo + hi + 1) >>> 1;
+      if(outOffsets[mid] <= k){
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+
+    return lo;
+  }
+
+  private int[] sort(){
+    final int   N       = vertices.size();
+    final int[] pending = new int[N];
+    final int[] sorted  = new int[N];
+
+    int tail = 0;
+    for(int v = 0; v < N; v++){
+      pending[v] = inDegree(v);
+      if(pending[v] == 0) sorted[tail++] = v;
+    }
+
+    // Kahn's algorithm, using the sorted array as its queue
+    for(int head = 0; head < tail; head++){
+      final int current = sorted[head];
+      for(int k = outOffsets[current]; k < outOffsets[current + 1]; k++){
+        if(--pending[targets[k]] == 0) sorted[tail++] = targets[k];
+      }
+    }
+
+    if(tail != N){
+      throw new CycleEdgesException("Error: A cycle has been formed!");
+    }
+
+    return sorted;
+  }
+
+  private static int[] sortedBy(int[] keys, int[] order, int N, int M){
+    final int[] counts = new int[N + 1];
+    for(int e = 0; e < M; e++){
+      counts[keys[e] + 1]++;
+    }
+
+    for(int v = 0; v < N; v++){
+      counts[v + 1] += counts[v];
+    }
+
+    // stable: edges with the same key keep their relative order
+    final int[] sorted = new int[M];
+    for(int idx = 0; idx < M; idx++){
+      final int e = order == null ? idx : order[idx];
+      sorted[counts[keys[e]]++] = e;
+    }
+
+    return sorted;
+  }
+
+  @Override public String toString() {
+    return "CompactDirectedAcyclicGraph (" + vertexCount() + " vertices, " + size() + " edges)";
+  }
+
+  /**
+   * Read-only view over a range of edges; edges are made when iterated.
+   */
+  private class EdgeSetView extends AbstractSet<E> {
+    private final int   start;
+    private final int   end;
+    private final int[] positions;
+
+    /**
+     * @param start the first position of the range (inclusive).
+     * @param end the last position of the range (exclusive).
+     * @param positions maps positions in the range to edge indices; null if the range
+     *                  holds edge indices.
+     */
+    EdgeSetView(int start, int end, int[] positions){
+      this.start      = start;
+      this.end        = end;
+      this.positions  = positions;
+    }
+
+    @Override public Iterator<E> iterator() {
+      return new Iterator<E>() {
+        int next = start;
+
+        @Override public boolean hasNext() {
+          return next < end;
+        }
+
+        @Override public E next() {
+          if(!hasNext()) throw new NoSuchElementException();
+
+          final int k = positions == null ? next : positions[next];
+          next++;
+
+          return edgeFactory.make(vertices.get(sourceOf(k)), vertices.get(targets[k]), weights[k]);
+        }
+      };
+    }
+
+    @Override public boolean contains(Object o) {
+      if(!(o instanceof Edge)) return false;
+
+      final Edge<?> edge = (Edge<?>) o;
+      final Integer from = indices.get(edge.from());
+      final Integer to   = indices.get(edge.to());
+      if(from == null || to == null) return false;
+
+      final int k = edgeIndex(from, to);
+      if(k < 0) return false;
+
+      if(positions == null) return start <= k && k < end;
+
+      // an incoming range holds the edges of a single target, so the edge found
+      // through its source must also be the edge going into that target
+      final int slot = Arrays.binarySearch(sources, start, end, from);
+      return slot >= 0 && inEdges[slot] == k;
+    }
+
+    @Override public int size() {
+      return end - start;
+    }
+  }
+
+  /**
+   * Builder of compact DAGs. Vertices are numbered in the order they are added;
+   * repeated edges are ignored.
+   */
+  public static final class Builder<V, E extends Edge<V>> {
+    private final EdgeFactory<V, E>   edgeFactory;
+    private final List<V>             vertices;
+    private final Map<V, Integer>     indices;
+    private final Set<Long>           pairs;
+
+    private int[]     from;
+    private int[]     to;
+    private double[]  weights;
+    private int       edgeCount;
+    private int       root;
+
+    private Builder(EdgeFactory<V, E> edgeFactory){
+      this.edgeFactory  = Objects.requireNonNull(edgeFactory);
+      this.vertices     = new ArrayList<>();
+      this.indices      = new HashMap<>();
+      this.pairs        = new HashSet<>();
+      this.from         = new int[8];
+      this.to           = new int[8];
+      this.weights      = new double[8];
+      this.edgeCount    = 0;
+      this.root         = -1;
+    }
+
+    /**
+     * Adds a vertex, if not already added.
+     *
+     * @param vertex the vertex to add.
+     * @return the index of this vertex.
+     */
+    public int addVertex(V vertex){
+      Objects.requireNonNull(vertex);
+
+      return indices.computeIfAbsent(vertex, k -> {
+        vertices.add(k);
+        return vertices.size() - 1;
+      });
+    }
+
+    /**
+     * Sets the root vertex, adding it if not already added.
+     *
+     * @param vertex the root vertex.
+     * @return this builder.
+     */
+    public Builder<V, E> addRootVertex(V vertex){
+      root = addVertex(vertex);
+      return this;
+    }
+
+    /**
+     * Adds an edge with no weight.
+     *
+     * @param source the source vertex
+     * @param target the target vertex
+     * @return this builder.
+     */
+    public Builder<V, E> addEdge(V source, V target){
+      return addEdge(source, target, 0.0);
+    }
+
+    /**
+     * Adds an edge.
+     *
+     * @param source the source vertex
+     * @param target the target vertex
+     * @param weight the edge weight/cost
+     * @return this builder.
+     * @throws IllegalArgumentException if source/target were not added to this builder.
+     */
+    public Builder<V, E> addEdge(V source, V target, double weight){
+      final Integer s = indices.get(source);
+      final Integer t = indices.get(target);
+
+      if (s == null)
+        throw new IllegalArgumentException("from is not in graph");
+      if (t == null)
+        throw new IllegalArgumentException("to is not in graph");
+
+      if(!pairs.add((((long) s) << 32) | t)) return this;
+
+      if(edgeCount == from.length){
+        from    = Arrays.copyOf(from, edgeCount * 2);
+        to      = Arrays.copyOf(to, edgeCount * 2);
+        weights = Arrays.copyOf(weights, edgeCount * 2);
+      }
+
+      from[edgeCount]    = s;
+      to[edgeCount]      = t;
+      weights[edgeCount] = weight;
+      edgeCount++;
+
+      return this;
+    }
+
+    /**
+     * Builds the graph.
+     *
+     * @return a new compact DAG.
+     * @throws CycleEdgesException if the added edges form a cycle.
+     */
+    public CompactDirectedAcyclicGraph<V, E> build(){
+      return new CompactDirectedAcyclicGraph<>(this);
+    }
+  }
+}
@@ -2,6 +2,9 @@ package com.vesperin.cue.spi;
 
 import com.google.common.collect.Sets;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -29,6 +32,44 @@ public interface DirectedAcyclicGraph<V, E extends Edge <V>> {
     return result;
   }
 
+  /**
+   * Inserts a collection of directed edges into the graph, and then checks
+   * (only once) that the graph is still acyclic. If it is not, or if any of the
+   * given edges is rejected, none of the given edges is kept.
+   *
+   * @param edges the edges to insert; only their source, destination, and weight
+   *              are used.
+   * @return true if at least one edge was added, false otherwise.
+   * @throws IllegalArgumentException if an edge's from/to are not vertices in the graph
+   * @throws CycleEdgesException if the edges formed a cycle in the graph.
+   */
+  default boolean addAllEdges(Collection<? extends Edge<V>> edges){
+    final List<Edge<V>> added = new ArrayList<>();
+    try {
+      for(Edge<V> each : edges){
+        if(addEdge(each.from(), each.to(), each.weight())){
+          added.add(each);
+        }
+      }
+    } catch (RuntimeException e){
+      for(Edge<V> each : added){
+        removeEdge(each.from(), each.to());
+      }
+
+      throw e;
+    }
+
+    if(hasCycle()){
+      for(Edge<V> each : added){
+        removeEdge(each.from(), each.to());
+      }
+
+      throw new CycleEdgesException("Error: A cycle has been formed!");
+    }
+
+    return !added.isEmpty();
+  }
+
   /**
    * @return true if the graph has a cycle.
    */
@@ -0,0 +1,154 @@
+package com.vesperin.cue.text;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * An immutable sparse vector of term weights (e.g., TF or TF-IDF), keyed by term id. Term
+ * ids are kept in a sorted int array, so the dot product between two vectors is computed
+ * by a linear merge (sorted-array intersection) over their non-zero entries.
+ *
+ * @author Huascar Sanchez
+ */
+public class SparseVector {
+  private static final SparseVector EMPTY = new SparseVector(new int[0], new double[0]);
+
+  private final int[]     terms;
+  private final double[]  weights;
+  private final double    norm;
+
+  private SparseVector(int[] terms, double[] weights){
+    this.terms    = terms;
+    this.weights  = weights;
+
+    double squares = 0.0;
+    for(double each : weights){
+      squares += each * each;
+    }
+
+    this.norm = Math.sqrt(squares);
+  }
+
+  /**
+   * @return the empty vector.
+   */
+  public static SparseVector empty(){
+    return EMPTY;
+  }
+
+  /**
+   * Creates a new sparse vector from a map of term ids and their weights. Zero
+   * weights are dropped.
+   *
+   * @param entries term ids and their weights.
+   * @return a new sparse vector.
+   */
+  public static SparseVector of(Map<Integer, ? extends Number> entries){
+    Objects.requireNonNull(entries);
+
+    final int[] keys = new int[entries.size()];
+    int size = 0;
+    for(Map.Entry<Integer, ? extends Number> each : entries.entrySet()){
+      if(each.getValue().doubleValue() != 0.0){
+        keys[size++] = each.getKey();
+      }
+    }
+
+    final int[] terms = Arrays.copyOf(keys, size);
+    Arrays.sort(terms);
+
+    final double[] weights = new double[size];
+    for(int idx = 0; idx < size; idx++){
+      weights[idx] = entries.get(terms[idx]).doubleValue();
+    }
+
+    return size == 0 ? EMPTY : new SparseVector(terms, weights);
+  }
+
+  /**
+   * Re-weights this vector's entries; e.g., turns TF weights into TF-IDF weights.
+   *
+   * @param factor the factor applied to each term's weight, given the term's id.
+   * @return a new re-weighted vector.
+   */
+  public SparseVector scale(IntToDoubleFunction factor){
+    final double[] scaled = new double[weights.length];
+    for(int idx = 0; idx < terms.length; idx++){
+      scaled[idx] = weights[idx] * factor.applyAsDouble(terms[idx]);
+    }
+
+    return new SparseVector(terms, scaled);
+  }
+
+  /**
+   * Computes the dot product between this and that vector.
+   *
+   * @param that the other vector.
+   * @return the dot product.
+   */
+  public double dot(SparseVector that){
+    double result = 0.0;
+
+    int i = 0;
+    int j = 0;
+    while(i < this.terms.length && j < that.terms.length){
+      final int a = this.terms[i];
+      final int b = that.terms[j];
+
+      if(a == b){
+        result += this.weights[i++] * that.weights[j++];
+      } else if(a < b){
+        i++;
+      } else {
+        j++;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Computes the cosine similarity between this and that vector.
+   *
+   * @param that the other vector.
+   * @return cosine similarity score; 0 if either vector is empty.
+   */
+  public double cosine(SparseVector that){
+    if(this.norm == 0.0 || that.norm == 0.0) return 0.0;
+
+    return Math.min(1.0, dot(that) / (this.norm * that.norm));
+  }
+
+  /**
+   * @return the term ids with non-zero weights, in ascending order.
+   */
+  public int[] terms(){
+    return terms.clone();
+  }
+
+  /**
+   * @return the number of non-zero entries in this vector.
+   */
+  public int size(){
+    return terms.length;
+  }
+
+  /**
+   * @return true if this vector has no non-zero entries.
+   */
+  public boolean isEmpty(){
+    return size() == 0;
+  }
+
+  @Override public String toString() {
+    final StringBuilder s = new StringBuilder("(");
+    for(int idx = 0; idx < terms.length; idx++){
+      if(idx > 0) s.append(", ");
+      s.append(terms[idx]).append(": ").append(weights[idx]);
+    }
+
+    return s.append(')').toString();
+  }
+}
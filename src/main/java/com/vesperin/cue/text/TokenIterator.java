@@ -2,11 +2,13 @@ package com.vesperin.cue.text;
 
 import com.google.common.collect.Sets;
 import com.vesperin.base.locations.Location;
-import com.vesperin.base.locations.Locations;
 import com.vesperin.base.visitors.SkeletalVisitor;
 import com.vesperin.cue.text.SpellChecker;
 import com.vesperin.cue.text.StopWords;
+import com.vesperin.cue.utils.IntervalIndex;
+import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.Statement;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -21,53 +23,78 @@ public class TokenIterator extends SkeletalVisitor implements Iterable <String>
   private final List<String> items = new ArrayList<>();
   private final Set<SimpleName> visited = new HashSet<>();
 
-  private final Set<Location> blackSet;
+  private final IntervalIndex blackSet;
 
   public TokenIterator(){
     this(new HashSet<>());
   }
 
   public TokenIterator(Set<Location> blackSet){
-    this.blackSet = blackSet;
+    this.blackSet = IntervalIndex.of(blackSet);
   }
 
 
+  @Override public boolean preVisit2(ASTNode node) {
+    // names inside an irrelevant block or statement are all irrelevant; skip the subtree
+    return !(node instanceof Statement && inBlackSet(node));
+  }
+
   @Override public boolean visit(SimpleName simpleName) {
-    final Location nodeLocation = Locations.locate(simpleName);
     if(!visited.contains(simpleName) &&
-      !inBlackSet(nodeLocation) && simpleName.getIdentifier().length() > 2){
+      !inBlackSet(simpleName) && isTokenizable(simpleName.getIdentifier())){
 
-      final String identifier = simpleName.getIdentifier();
+      getItems().addAll(tokensOf(simpleName.getIdentifier()));
 
-      if(!(identifier.endsWith("Exception") || identifier.equals("Throwable") || identifier.equals("Error"))){
-        final String[] split = simpleName.getIdentifier().split("((?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z]))|_");
+      visited.add(simpleName);
+    }
 
-        for(String eachLabel : split){
 
-          if(" ".equals(eachLabel) || eachLabel.isEmpty() || StopWords.isStopWord(Sets.newHashSet(), eachLabel)) continue;
+    return super.visit(simpleName);
+  }
+
+  /**
+   * Checks whether the identifier of a name produces any tokens; i.e., it is longer than
+   * two characters, and it does not name an exception.
+   *
+   * @param identifier the identifier of a name
+   * @return true if it can be tokenized; false otherwise.
+   */
+  public static boolean isTokenizable(String identifier){
+    return identifier.length() > 2
+      && !(identifier.endsWith("Exception") || identifier.equals("Throwable") || identifier.equals("Error"));
+  }
 
-          String currentLabel = eachLabel;
-          if(SpellChecker.onlyConsonants(currentLabel) || !SpellChecker.containsWord(currentLabel.toLowerCase())){
-            final String newLabel = SpellChecker.suggestCorrection(currentLabel.toLowerCase()).toLowerCase();
+  /**
+   * Splits an identifier into its (camel case or snake case) words, and spell checks
+   * each one of them.
+   *
+   * @param identifier the identifier of a name
+   * @return the list of lower case tokens in this identifier.
+   */
+  public static List<String> tokensOf(String identifier){
+    final List<String> tokens = new ArrayList<>();
 
-            if(SpellChecker.similarity(currentLabel, newLabel) > 0.3f){
-              currentLabel = newLabel;
-            }
+    final String[] split = identifier.split("((?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z]))|_");
 
+    for(String eachLabel : split){
 
-          }
+      if(" ".equals(eachLabel) || eachLabel.isEmpty() || StopWords.isStopWord(Sets.newHashSet(), eachLabel)) continue;
 
-          getItems().add(currentLabel.toLowerCase());
+      String currentLabel = eachLabel;
+      if(SpellChecker.onlyConsonants(currentLabel) || !SpellChecker.containsWord(currentLabel.toLowerCase())){
+        final String newLabel = SpellChecker.suggestCorrection(currentLabel.toLowerCase()).toLowerCase();
+
+        if(SpellChecker.similarity(currentLabel, newLabel) > 0.3f){
+          currentLabel = newLabel;
         }
 
-        visited.add(simpleName);
 
       }
 
+      tokens.add(currentLabel.toLowerCase());
     }
 
-
-    return super.visit(simpleName);
+    return tokens;
   }
 
 
@@ -77,14 +104,8 @@ public class TokenIterator extends SkeletalVisitor implements Iterable <String>
 
 
 
-  private boolean inBlackSet(Location nodeLocation){
-    for(Location each : blackSet){
-      if(each.same(nodeLocation) || Locations.covers(each, nodeLocation)){
-        return true;
-      }
-    }
-
-    return false;
+  private boolean inBlackSet(ASTNode node){
+    return blackSet.covers(node);
   }
 
 
@@ -0,0 +1,46 @@
+package com.vesperin.cue.text;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe mapping between terms and dense int ids.
+ *
+ * @author Huascar Sanchez
+ */
+public class Vocabulary {
+  private final Map<String, Integer> ids;
+  private final AtomicInteger        next;
+
+  /**
+   * Constructs an empty vocabulary.
+   */
+  public Vocabulary(){
+    this.ids  = new ConcurrentHashMap<>();
+    this.next = new AtomicInteger(0);
+  }
+
+  /**
+   * Returns the id of a term, assigning a new one if the term is not in
+   * this vocabulary.
+   *
+   * @param term the term of interest.
+   * @return the term's id.
+   */
+  public int idOf(String term){
+    return ids.computeIfAbsent(Objects.requireNonNull(term), t -> next.getAndIncrement());
+  }
+
+  /**
+   * @return number of terms in this vocabulary.
+   */
+  public int size(){
+    return ids.size();
+  }
+
+  @Override public String toString() {
+    return "Vocabulary (" + size() + " terms)";
+  }
+}
@@ -9,10 +9,8 @@ import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.IBinding;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
-import org.eclipse.jdt.core.dom.NodeFinder;
 import org.eclipse.jdt.core.dom.SimpleName;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -81,47 +79,24 @@ public class AstUtils {
   }
 
   private static List<SimpleName> findByProblems(ASTNode parent, SimpleName nameNode) {
-    final List<SimpleName> result = new ArrayList<>();
-
     final ASTNode astRoot = parent.getRoot();
 
     if (!(astRoot instanceof CompilationUnit)) {
       return ImmutableList.of();
     }
 
-    final IProblem[] problems = ((CompilationUnit)astRoot).getProblems();
+    final ProblemIndex problems = ProblemIndex.of((CompilationUnit) astRoot);
 
-    int nameNodeKind = getNameNodeProblemKind(problems, nameNode);
+    int nameNodeKind = problems.kindOf(nameNode);
     if (nameNodeKind == 0) { // no problem on node
       return ImmutableList.of();
     }
 
-    int bodyStart   = parent.getStartPosition();
-    int bodyEnd     = bodyStart + parent.getLength();
-
-    String name = nameNode.getIdentifier();
-
-    for (IProblem each : problems) {
-      int probStart   = each.getSourceStart();
-      int probEnd     = each.getSourceEnd() + 1;
-
-      if (probStart > bodyStart && probEnd < bodyEnd) {
-        int currKind = getProblemKind(each);
-        if ((nameNodeKind & currKind) != 0) {
-          ASTNode node = NodeFinder.perform(parent, probStart, (probEnd - probStart));
-          if (node instanceof SimpleName
-            && name.equals(((SimpleName)node).getIdentifier())) {
-            result.add((SimpleName) node);
-          }
-        }
-      }
-    }
-
-    return result;
+    return problems.namesWithin(parent, nameNode.getIdentifier(), nameNodeKind);
   }
 
 
-  private static int getProblemKind(IProblem problem) {
+  static int getProblemKind(IProblem problem) {
     switch (problem.getID()) {
       case IProblem.UndefinedField:
         return FIELD;
@@ -177,21 +152,4 @@ public class AstUtils {
 
     return Jdt.getSimpleNameIdentifier(methodDeclaration(node).getName());
   }
-
-
-  private static int getNameNodeProblemKind(IProblem[] problems, SimpleName nameNode) {
-    final int nameOffset  = nameNode.getStartPosition();
-    final int nameInclEnd = nameOffset + nameNode.getLength() - 1;
-
-    for (IProblem each : problems) {
-      if (each.getSourceStart() == nameOffset && each.getSourceEnd() == nameInclEnd) {
-        int kind = getProblemKind(each);
-        if (kind != 0) {
-          return kind;
-        }
-      }
-    }
-
-    return 0;
-  }
 }
@@ -0,0 +1,164 @@
+package com.vesperin.cue.utils;
+
+import com.vesperin.base.locations.Location;
+import org.eclipse.jdt.core.dom.ASTNode;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * An offset-based index of source ranges, answering whether any indexed range covers a
+ * given range (see {@link com.vesperin.base.locations.Locations#covers(Location, Location)};
+ * i.e., starts at or before it, and ends no more than one offset before it ends).
+ *
+ * <p>Ranges covered by other indexed ranges can never answer a query on their own, so only
+ * the outermost ranges are kept. Sorted by start offset, their end offsets are then sorted
+ * as well, and a query checks the last range starting at or before the queried start: a
+ * binary search over two int arrays. Ranges are never merged, since two adjacent ranges
+ * do not cover what lies across them.</p>
+ *
+ * @author Huascar Sanchez
+ */
+public final class IntervalIndex {
+  private int[] starts;
+  private int[] ends;
+  private int   size;
+
+  /**
+   * Constructs an empty interval index.
+   */
+  public IntervalIndex(){
+    this.starts = new int[8];
+    this.ends   = new int[8];
+    this.size   = 0;
+  }
+
+  /**
+   * Creates an interval index of a collection of locations.
+   *
+   * @param locations the locations to index.
+   * @return a new interval index.
+   */
+  public static IntervalIndex of(Collection<Location> locations){
+    final IntervalIndex index = new IntervalIndex();
+    for(Location each : Objects.requireNonNull(locations)){
+      index.add(each);
+    }
+
+    return index;
+  }
+
+  /**
+   * Adds the range of a location to this index.
+   *
+   * @param location the location to add.
+   */
+  public void add(Location location){
+    add(location.getStart().getOffset(), location.getEnd().getOffset());
+  }
+
+  /**
+   * Adds the range of an AST node to this index.
+   *
+   * @param node the AST node to add.
+   */
+  public void add(ASTNode node){
+    add(node.getStartPosition(), node.getStartPosition() + node.getLength());
+  }
+
+  /**
+   * Adds a range to this index.
+   *
+   * @param start the start offset of the range.
+   * @param end the end offset of the range.
+   */
+  public void add(int start, int end){
+    final int floor = floor(start);
+
+    // already covered by an indexed range
+    if(floor >= 0 && ends[floor] >= end) return;
+
+    // drop the indexed ranges this one covers; they follow it, with increasing ends
+    final int from = (floor >= 0 && starts[floor] == start) ? floor : floor + 1;
+    int to = from;
+    while(to < size && ends[to] <= end){
+      to++;
+    }
+
+    final int removed = to - from;
+    if(removed == 0){
+      ensureCapacity(size + 1);
+    }
+
+    System.arraycopy(starts, to, starts, from + 1, size - to);
+    System.arraycopy(ends,   to, ends,   from + 1, size - to);
+
+    starts[from] = start;
+    ends[from]   = end;
+    size        += 1 - removed;
+  }
+
+  /**
+   * Checks whether an indexed range covers a given range.
+   *
+   * @param start the start offset of the range.
+   * @param end the end offset of the range.
+   * @return true if an indexed range covers this range; false otherwise.
+   */
+  public boolean covers(int start, int end){
+    final int floor = floor(start);
+    return floor >= 0 && end <= ends[floor] + 1;
+  }
+
+  /**
+   * Checks whether an indexed range covers the range of an AST node.
+   *
+   * @param node the AST node of interest.
+   * @return true if an indexed range covers this node; false otherwise.
+   */
+  public boolean covers(ASTNode node){
+    return covers(node.getStartPosition(), node.getStartPosition() + node.getLength());
+  }
+
+  /**
+   * @return true if there are no ranges in this index.
+   */
+  public boolean isEmpty(){
+    return size == 0;
+  }
+
+  /**
+   * @return the number of (outermost) ranges in this index.
+   */
+  public int size(){
+    return size;
+  }
+
+  private int floor(int start){
+    int lo = 0;
+    int hi = size - 1;
+    while(lo <= hi){
+      final int mid = (lo + hi) >>> 1;
+      if(starts[mid] <= start){
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+
+    return hi;
+  }
+
+  private void ensureCapacity(int capacity){
+    if(capacity > starts.length){
+      final int length = Math.max(capacity, starts.length * 2);
+      starts = Arrays.copyOf(starts, length);
+      ends   = Arrays.copyOf(ends, length);
+    }
+  }
+
+  @Override public String toString() {
+    return "IntervalIndex (" + size + " ranges)";
+  }
+}
@@ -0,0 +1,309 @@
+package com.vesperin.cue.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.ToDoubleBiFunction;
+import java.util.stream.IntStream;
+
+/**
+ * k-medoids clustering (PAM) over an arbitrary distance function. Inputs larger than
+ * the sample size are clustered with CLARA: PAM runs on a few random samples, and each
+ * sample's medoids are scored against the whole input; the medoids with the lowest
+ * total cost win. The cost of clustering n items is then bounded by
+ * {@code samples * (sampleSize^2 * iterations * k + n * k)} distance calls.
+ *
+ * <p>The swap phase evaluates all candidate swaps in parallel. Unless given a
+ * {@link Random}, sampling is seeded with {@link #SEED}, so clustering the same
+ * items twice yields the same medoids.</p>
+ *
+ * See:
+ * Leonard Kaufman and Peter J. Rousseeuw. 1990. Finding Groups in Data: An
+ * Introduction to Cluster Analysis. John Wiley & Sons.
+ *
+ * @author Huascar Sanchez
+ */
+public class KMedoids <T> {
+  /** Seed of the default source of randomness. */
+  public static final long SEED = 0x5EEDL;
+
+  private final ToDoubleBiFunction<T, T> distance;
+  private final int                      k;
+  private final int                      sampleSize;
+  private final int                      samples;
+  private final int                      maxIterations;
+  private final Random                   random;
+
+  /**
+   * Constructs a new k-medoids clustering with CLARA's recommended sampling
+   * parameters: 5 samples of (40 + 2k) items each.
+   *
+   * @param k number of medoids.
+   * @param distance the distance function between two items.
+   */
+  public KMedoids(int k, ToDoubleBiFunction<T, T> distance){
+    this(k, distance, new Random(SEED));
+  }
+
+  /**
+   * Constructs a new k-medoids clustering with CLARA's recommended sampling
+   * parameters: 5 samples of (40 + 2k) items each.
+   *
+   * @param k number of medoids.
+   * @param distance the distance function between two items.
+   * @param random the source of randomness used for sampling.
+   */
+  public KMedoids(int k, ToDoubleBiFunction<T, T> distance, Random random){
+    this(k, distance, 40 + 2 * k, 5, 100, random);
+  }
+
+  /**
+   * Constructs a new k-medoids clustering.
+   *
+   * @param k number of medoids.
+   * @param distance the distance function between two items.
+   * @param sampleSize inputs up to this size are clustered by PAM; larger inputs are sampled.
+   * @param samples number of samples drawn from large inputs.
+   * @param maxIterations max number of swap iterations per PAM run.
+   * @param random the source of randomness used for sampling.
+   */
+  public KMedoids(int k, ToDoubleBiFunction<T, T> distance, int sampleSize, int samples,
+          int maxIterations, Random random){
+    if(k < 1)               throw new IllegalArgumentException("k must be at least 1");
+    if(sampleSize < k)      throw new IllegalArgumentException("sampleSize must be at least k");
+    if(samples < 1)         throw new IllegalArgumentException("samples must be at least 1");
+    if(maxIterations < 0)   throw new IllegalArgumentException("Negative maxIterations is not allowed");
+
+    this.distance       = Objects.requireNonNull(distance);
+    this.k              = k;
+    this.sampleSize     = sampleSize;
+    this.samples        = samples;
+    this.maxIterations  = maxIterations;
+    this.random         = Objects.requireNonNull(random);
+  }
+
+  /**
+   * Clusters a collection of items around (at most) k medoids.
+   *
+   * @param items the items to cluster.
+   * @return a map between each medoid and the other items closest to it; medoids
+   *  are not listed among their own members.
+   */
+  public Map<T, List<T>> cluster(Collection<T> items){
+    final List<T> all = new ArrayList<>(Objects.requireNonNull(items));
+    if(all.isEmpty()) return new LinkedHashMap<>();
+
+    final List<T> medoids = all.size() <= sampleSize ? pam(all) : clara(all);
+
+    return assign(all, medoids);
+  }
+
+  private List<T> clara(List<T> all){
+    List<T> best     = null;
+    double  bestCost = Double.POSITIVE_INFINITY;
+
+    for(int s = 0; s < samples; s++){
+      // each sample keeps the best medoids found so far (Kaufman and Rousseeuw)
+      final Set<T> sample = new LinkedHashSet<>();
+      if(best != null) sample.addAll(best);
+
+      final List<T> shuffled = new ArrayList<>(all);
+      Collections.shuffle(shuffled, random);
+      for(T each : shuffled){
+        if(sample.size() >= sampleSize) break;
+        sample.add(each);
+      }
+
+      final List<T> medoids = pam(new ArrayList<>(sample));
+      final double  cost    = cost(all, medoids);
+      if(cost < bestCost){
+        bestCost = cost;
+        best     = medoids;
+      }
+    }
+
+    return best;
+  }
+
+  private List<T> pam(List<T> items){
+    final int n = items.size();
+    final int m = Math.min(k, n);
+
+    // pairwise distances between items in this (small) set
+    final double[][] d = new double[n][n];
+    IntStream.range(0, n).parallel().forEach(i -> {
+      for(int j = i + 1; j < n; j++){
+        final double dij = distance.applyAsDouble(items.get(i), items.get(j));
+        d[i][j] = dij;
+        d[j][i] = dij;
+      }
+    });
+
+    final int[] medoids = build(d, m);
+
+    for(int iteration = 0; iteration < maxIterations; iteration++){
+      final double[] nearest = new double[n];
+      final double[] second  = new double[n];
+      final int[]    owner   = new int[n];
+      nearestTwo(d, medoids, nearest, second, owner);
+
+      final boolean[] isMedoid = new boolean[n];
+      for(int each : medoids) isMedoid[each] = true;
+
+      // best swap (medoid slot i, candidate h) per candidate, evaluated in parallel
+      final double[] deltas = new double[n];
+      final int[]    slots  = new int[n];
+      IntStream.range(0, n).parallel().forEach(h -> {
+        deltas[h] = 0.0;
+        slots[h]  = -1;
+        if(isMedoid[h]) return;
+
+        for(int i = 0; i < medoids.length; i++){
+          double delta = 0.0;
+          for(int j = 0; j < n; j++){
+            final double dj = d[j][h];
+            delta += (owner[j] == i ? Math.min(dj, second[j]) : Math.min(dj, nearest[j])) - nearest[j];
+          }
+
+          if(delta < deltas[h]){
+            deltas[h] = delta;
+            slots[h]  = i;
+          }
+        }
+      });
+
+      int candidate = -1;
+      for(int h = 0; h < n; h++){
+        if(slots[h] >= 0 && (candidate < 0 || deltas[h] < deltas[candidate])){
+          candidate = h;
+        }
+      }
+
+      // no swap improves the total cost
+      if(candidate < 0) break;
+
+      medoids[slots[candidate]] = candidate;
+    }
+
+    final List<T> result = new ArrayList<>(medoids.length);
+    for(int each : medoids){
+      result.add(items.get(each));
+    }
+
+    return result;
+  }
+
+  private static int[] build(double[][] d, int m){
+    final int n = d.length;
+
+    final int[]     medoids = new int[m];
+    final double[]  nearest = new double[n];
+    final boolean[] taken   = new boolean[n];
+    Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+
+    // greedily add the medoid that decreases the total cost the most
+    for(int slot = 0; slot < m; slot++){
+      int    best     = -1;
+      double bestCost = Double.POSITIVE_INFINITY;
+
+      for(int h = 0; h < n; h++){
+        if(taken[h]) continue;
+
+        double cost = 0.0;
+        for(int j = 0; j < n; j++){
+          cost += Math.min(nearest[j], d[j][h]);
+        }
+
+        if(cost < bestCost){
+          bestCost = cost;
+          best     = h;
+        }
+      }
+
+      medoids[slot] = best;
+      taken[best]   = true;
+      for(int j = 0; j < n; j++){
+        nearest[j] = Math.min(nearest[j], d[j][best]);
+      }
+    }
+
+    return medoids;
+  }
+
+  private static void nearestTwo(double[][] d, int[] medoids, double[] nearest, double[] second,
+          int[] owner){
+    for(int j = 0; j < d.length; j++){
+      nearest[j] = Double.POSITIVE_INFINITY;
+      second[j]  = Double.POSITIVE_INFINITY;
+      owner[j]   = -1;
+
+      for(int i = 0; i < medoids.length; i++){
+        final double dj = d[j][medoids[i]];
+        if(dj < nearest[j]){
+          second[j]  = nearest[j];
+          nearest[j] = dj;
+          owner[j]   = i;
+        } else if(dj < second[j]){
+          second[j] = dj;
+        }
+      }
+    }
+  }
+
+  private double cost(List<T> all, List<T> medoids){
+    return all.parallelStream()
+      .mapToDouble(each -> {
+        double min = Double.POSITIVE_INFINITY;
+        for(T medoid : medoids){
+          min = Math.min(min, distance.applyAsDouble(each, medoid));
+        }
+        return min;
+      })
+      .sum();
+  }
+
+  private Map<T, List<T>> assign(List<T> all, List<T> medoids){
+    final int[] owners = all.parallelStream()
+      .mapToInt(each -> {
+        int    owner = 0;
+        double min   = Double.POSITIVE_INFINITY;
+        for(int i = 0; i < medoids.size(); i++){
+          final double d = distance.applyAsDouble(each, medoids.get(i));
+          if(d < min){
+            min   = d;
+            owner = i;
+          }
+        }
+        return owner;
+      })
+      .toArray();
+
+    final Set<T> chosen = new LinkedHashSet<>(medoids);
+
+    final Map<T, List<T>> region = new LinkedHashMap<>();
+    for(T each : medoids){
+      region.put(each, new ArrayList<>());
+    }
+
+    for(int idx = 0; idx < all.size(); idx++){
+      final T each = all.get(idx);
+      if(chosen.contains(each)) continue;
+
+      region.get(medoids.get(owners[idx])).add(each);
+    }
+
+    return region;
+  }
+
+  @Override public String toString() {
+    return "KMedoids (k = " + k + ", sampleSize = " + sampleSize + ", samples = " + samples + ")";
+  }
+}
@@ -0,0 +1,181 @@
+package com.vesperin.cue.utils;
+
+import com.google.common.collect.ImmutableList;
+import com.vesperin.cue.segment.LinkedNodesVisitor;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.SimpleName;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A one-pass index of the names in a compilation unit. Bound names are grouped by the
+ * declaration of their binding; unbound names are looked up in the unit's problem index,
+ * by their identifier and the kind of problem reported on them. Looking up the nodes
+ * linked to a name is then a map access, rather than a new walk over the whole
+ * compilation unit.
+ *
+ * <p>Lookups return the same nodes {@link AstUtils#findByNode(ASTNode, SimpleName)} returns
+ * when it is called with the compilation unit as its root.</p>
+ *
+ * @author Huascar Sanchez
+ */
+public final class OccurrenceIndex {
+  private static final String PROPERTY = OccurrenceIndex.class.getName();
+
+  private final ProblemIndex                    problems;
+  private final Map<IBinding, List<SimpleName>> bound;
+  private final Map<IBinding, List<SimpleName>> linked;
+
+  /**
+   * Indexes the names of a compilation unit.
+   *
+   * @param root the compilation unit to index.
+   * @param names all the names in this compilation unit.
+   */
+  private OccurrenceIndex(CompilationUnit root, Iterable<SimpleName> names){
+    this.problems = ProblemIndex.of(root);
+    this.bound    = new IdentityHashMap<>();
+    this.linked   = new IdentityHashMap<>();
+
+    for(SimpleName each : names){
+      final IBinding binding = each.resolveBinding();
+      if(binding != null){
+        bound.computeIfAbsent(
+          LinkedNodesVisitor.getBindingDeclaration(binding),
+          k -> new ArrayList<>()
+        ).add(each);
+      }
+    }
+  }
+
+  /**
+   * Gets the occurrence index of a compilation unit. The index is built once, and then
+   * kept as a property of the compilation unit.
+   *
+   * @param root the compilation unit.
+   * @return the occurrence index of this compilation unit.
+   */
+  public static OccurrenceIndex of(CompilationUnit root){
+    Objects.requireNonNull(root);
+
+    synchronized (root){
+      final OccurrenceIndex index = (OccurrenceIndex) root.getProperty(PROPERTY);
+      if(index != null) return index;
+
+      final List<SimpleName> names = new ArrayList<>();
+      root.accept(new ASTVisitor(true) {
+        @Override public boolean visit(SimpleName node) {
+          names.add(node);
+          return false;
+        }
+      });
+
+      return of(root, names);
+    }
+  }
+
+  /**
+   * Gets the occurrence index of a compilation unit. If the unit has no index yet, it
+   * is built from names collected by some other pass over the unit.
+   *
+   * @param root the compilation unit.
+   * @param names all the names in this compilation unit, doc comments included.
+   * @return the occurrence index of this compilation unit.
+   */
+  public static OccurrenceIndex of(CompilationUnit root, Iterable<SimpleName> names){
+    Objects.requireNonNull(root);
+    Objects.requireNonNull(names);
+
+    synchronized (root){
+      OccurrenceIndex index = (OccurrenceIndex) root.getProperty(PROPERTY);
+      if(index == null){
+        index = new OccurrenceIndex(root, names);
+        root.setProperty(PROPERTY, index);
+      }
+
+      return index;
+    }
+  }
+
+  /**
+   * Gets all names linked to the given name. If the name has a binding, then all names
+   * linked to this binding (including overridden and overriding methods) are returned.
+   * If the name has no binding, then all names with the same identifier and a problem of
+   * the same kind are returned.
+   *
+   * @param name the name to find linked names for.
+   * @return the list of linked names; an empty list if there are none.
+   */
+  public List<SimpleName> occurrencesOf(SimpleName name){
+    final IBinding binding = name.resolveBinding();
+    if(binding != null){
+      return ImmutableList.copyOf(linkedTo(LinkedNodesVisitor.getBindingDeclaration(binding)));
+    }
+
+    return unresolved(name);
+  }
+
+  /**
+   * Counts all names linked to the given name.
+   *
+   * @param name the name to count linked names for.
+   * @return the number of linked names.
+   * @see #occurrencesOf(SimpleName)
+   */
+  public int countOf(SimpleName name){
+    final IBinding binding = name.resolveBinding();
+    if(binding != null){
+      return linkedTo(LinkedNodesVisitor.getBindingDeclaration(binding)).size();
+    }
+
+    return unresolved(name).size();
+  }
+
+  private List<SimpleName> linkedTo(IBinding declaration){
+    final List<SimpleName> names = bound.getOrDefault(declaration, ImmutableList.of());
+    if(declaration.getKind() != IBinding.METHOD) return names;
+
+    // methods are also linked to the methods they override or are overridden by
+    synchronized (linked){
+      return linked.computeIfAbsent(declaration, k -> {
+        final IMethodBinding method = (IMethodBinding) k;
+
+        final List<SimpleName> result = new ArrayList<>(names);
+        for(IBinding each : bound.keySet()){
+          if(each == method || each.getKind() != IBinding.METHOD) continue;
+
+          final IMethodBinding other = (IMethodBinding) each;
+          if(method.overrides(other) || other.overrides(method)){
+            result.addAll(bound.get(each));
+          }
+        }
+
+        if(result.size() > names.size()){
+          result.sort(Comparator.comparingInt(ASTNode::getStartPosition));
+        }
+
+        return result;
+      });
+    }
+  }
+
+  private List<SimpleName> unresolved(SimpleName name){
+    final int kind = problems.kindOf(name);
+    if(kind == 0) return ImmutableList.of();
+
+    return problems.namesWithin(name.getRoot(), name.getIdentifier(), kind);
+  }
+
+  @Override public String toString() {
+    return "OccurrenceIndex (" + bound.size() + " bindings)";
+  }
+}
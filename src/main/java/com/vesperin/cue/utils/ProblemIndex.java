@@ -0,0 +1,194 @@
+package com.vesperin.cue.utils;
+
+import com.google.common.collect.ImmutableList;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.NodeFinder;
+import org.eclipse.jdt.core.dom.SimpleName;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An index of the (name-related) problems reported on a compilation unit. Problems are
+ * sorted by source offset, and bucketed by problem kind and by the identifier of the name
+ * they were reported on, so that finding the problem kind of a name, or the names sharing
+ * a problem within some range, takes O(log p + matches) time rather than a scan over all
+ * problems.
+ *
+ * @author Huascar Sanchez
+ */
+class ProblemIndex {
+  private static final String PROPERTY = ProblemIndex.class.getName();
+
+  private final Problem[]                           problems;
+  private final Map<Integer, Map<String, Problem[]>> buckets;
+
+  /**
+   * Indexes the problems of a compilation unit.
+   *
+   * @param root the compilation unit to index.
+   */
+  private ProblemIndex(CompilationUnit root){
+    final IProblem[]    reported = root.getProblems();
+    final List<Problem> indexed  = new ArrayList<>();
+
+    for(int idx = 0; idx < reported.length; idx++){
+      final IProblem each = reported[idx];
+      final int      kind = AstUtils.getProblemKind(each);
+      if(kind == 0) continue;
+
+      final int probStart = each.getSourceStart();
+      final int probEnd   = each.getSourceEnd() + 1;
+
+      final ASTNode    node = NodeFinder.perform(root, probStart, (probEnd - probStart));
+      final SimpleName name = (node instanceof SimpleName) ? (SimpleName) node : null;
+
+      indexed.add(new Problem(idx, kind, probStart, probEnd, name));
+    }
+
+    indexed.sort(BY_OFFSET);
+
+    final Map<Integer, Map<String, List<Problem>>> grouped = new HashMap<>();
+    for(Problem each : indexed){
+      if(each.name == null) continue;
+
+      grouped.computeIfAbsent(each.kind, k -> new HashMap<>())
+        .computeIfAbsent(each.name.getIdentifier(), k -> new ArrayList<>())
+        .add(each);
+    }
+
+    this.problems = indexed.toArray(new Problem[indexed.size()]);
+    this.buckets  = new HashMap<>();
+
+    grouped.forEach((kind, names) -> {
+      final Map<String, Problem[]> bucket = new HashMap<>();
+      names.forEach((identifier, list) -> bucket.put(identifier, list.toArray(new Problem[list.size()])));
+      buckets.put(kind, bucket);
+    });
+  }
+
+  /**
+   * Gets the problem index of a compilation unit. The index is built once, and then
+   * kept as a property of the compilation unit.
+   *
+   * @param root the compilation unit.
+   * @return the problem index of this compilation unit.
+   */
+  static ProblemIndex of(CompilationUnit root){
+    Objects.requireNonNull(root);
+
+    synchronized (root){
+      ProblemIndex index = (ProblemIndex) root.getProperty(PROPERTY);
+      if(index == null){
+        index = new ProblemIndex(root);
+        root.setProperty(PROPERTY, index);
+      }
+
+      return index;
+    }
+  }
+
+  /**
+   * Gets the kind of the first problem reported exactly on a name.
+   *
+   * @param name the name of interest.
+   * @return the problem kind; 0 if there is no problem on this name.
+   */
+  int kindOf(SimpleName name){
+    final int nameStart = name.getStartPosition();
+    final int nameEnd   = nameStart + name.getLength();
+
+    // problems starting at the same offset are sorted by their reporting order
+    for(int idx = firstAfter(problems, nameStart - 1); idx < problems.length; idx++){
+      final Problem each = problems[idx];
+      if(each.start != nameStart) break;
+      if(each.end   == nameEnd) return each.kind;
+    }
+
+    return 0;
+  }
+
+  /**
+   * Gets the names, strictly within some parent node, that have a given identifier and
+   * a problem of a given kind reported on them.
+   *
+   * @param parent the parent node.
+   * @param identifier the identifier of these names.
+   * @param kind the problem kind (a bit mask).
+   * @return the list of names, in problem reporting order; an empty list if there are none.
+   */
+  List<SimpleName> namesWithin(ASTNode parent, String identifier, int kind){
+    final int bodyStart = parent.getStartPosition();
+    final int bodyEnd   = bodyStart + parent.getLength();
+
+    final List<Problem> matches = new ArrayList<>();
+    for(Map.Entry<Integer, Map<String, Problem[]>> each : buckets.entrySet()){
+      if((kind & each.getKey()) == 0) continue;
+
+      final Problem[] bucket = each.getValue().get(identifier);
+      if(bucket == null) continue;
+
+      for(int idx = firstAfter(bucket, bodyStart); idx < bucket.length; idx++){
+        final Problem problem = bucket[idx];
+        if(problem.start >= bodyEnd) break;
+        if(problem.end < bodyEnd) matches.add(problem);
+      }
+    }
+
+    if(matches.isEmpty()) return ImmutableList.of();
+
+    matches.sort(Comparator.comparingInt(p -> p.order));
+
+    final List<SimpleName> result = new ArrayList<>(matches.size());
+    for(Problem each : matches){
+      result.add(each.name);
+    }
+
+    return result;
+  }
+
+  private static int firstAfter(Problem[] sorted, int offset){
+    int lo = 0;
+    int hi = sorted.length;
+    while(lo < hi){
+      final int mid = (lo + hi) >>> 1;
+      if(sorted[mid].start <= offset){
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+
+    return lo;
+  }
+
+  @Override public String toString() {
+    return "ProblemIndex (" + problems.length + " problems)";
+  }
+
+  private static final Comparator<Problem> BY_OFFSET = Comparator
+    .comparingInt((Problem p) -> p.start)
+    .thenComparingInt(p -> p.order);
+
+  private static class Problem {
+    final int         order;
+    final int         kind;
+    final int         start;
+    final int         end;
+    final SimpleName  name;
+
+    Problem(int order, int kind, int start, int end, SimpleName name){
+      this.order  = order;
+      this.kind   = kind;
+      this.start  = start;
+      this.end    = end;
+      this.name   = name;
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.vesperin.cue.utils;
 
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * @author Huascar Sanchez
@@ -42,6 +43,31 @@ public class Similarity {
     return (editDistance/length);
   }
 
+  /**
+   * Calculates the Jaccard similarity between two sets of tokens; i.e.,
+   * the size of their intersection over the size of their union.
+   *
+   * @param a first set of tokens
+   * @param b second set of tokens
+   * @return jaccard similarity score in [0, 1].
+   */
+  public static float jaccard(Set<String> a, Set<String> b){
+    Objects.requireNonNull(a);
+    Objects.requireNonNull(b);
+
+    if(a.isEmpty() && b.isEmpty()) return 1.0f;
+
+    final Set<String> small = a.size() <= b.size() ? a : b;
+    final Set<String> large = small == a ? b : a;
+
+    int intersection = 0;
+    for(String each : small){
+      if(large.contains(each)) intersection++;
+    }
+
+    return intersection / (float) (a.size() + b.size() - intersection);
+  }
+
   /**
    * Edit distance between words
    *
@@ -0,0 +1,237 @@
+package com.vesperin.cue.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleBiFunction;
+
+/**
+ * A vantage-point tree (metric tree) for nearest neighbour and radius queries.
+ *
+ * <p>Each node picks an item (the vantage point) and splits the remaining items into those
+ * closer than the median distance to it (inside) and the rest (outside). At query time, the
+ * triangle inequality gives a lower bound for the distance between the query and every item
+ * in a subtree, so whole subtrees can be skipped without calling the distance function.</p>
+ *
+ * <p>The distance function must be a metric (e.g., edit distance); otherwise, pruning may
+ * skip items that should have been found. Costs that are not metrics (e.g., normalized edit
+ * distance) can still be minimized exactly, as long as they are bounded from below by some
+ * non-decreasing function of the metric distance (see
+ * {@link #nearest(Object, Cost, DoubleUnaryOperator)}).</p>
+ *
+ * @author Huascar Sanchez
+ */
+public class VantagePointTree <T> {
+  private final ToDoubleBiFunction<T, T> distance;
+  private final Node<T>                  root;
+  private final int                      size;
+
+  /**
+   * Builds a new vantage-point tree over a collection of items.
+   *
+   * @param items the items to index.
+   * @param distance the distance function between two items.
+   */
+  public VantagePointTree(Collection<T> items, ToDoubleBiFunction<T, T> distance){
+    this.distance = Objects.requireNonNull(distance);
+
+    final List<T> all = new ArrayList<>(Objects.requireNonNull(items));
+    this.size = all.size();
+    this.root = build(all, distance);
+  }
+
+  private static <T> Node<T> build(List<T> items, ToDoubleBiFunction<T, T> distance){
+    if(items.isEmpty()) return null;
+
+    // the first item is the vantage point; the rest is split by median distance
+    final T vantage = items.get(0);
+    if(items.size() == 1) return new Node<>(vantage, 0.0, null, null);
+
+    final List<Neighbour<T>> others = new ArrayList<>(items.size() - 1);
+    for(int idx = 1; idx < items.size(); idx++){
+      final T each = items.get(idx);
+      others.add(new Neighbour<>(each, distance.applyAsDouble(vantage, each)));
+    }
+
+    Collections.sort(others);
+
+    final int    median = others.size() / 2;
+    final double mu     = others.get(median).distance();
+
+    final List<T> inside  = new ArrayList<>();
+    final List<T> outside = new ArrayList<>();
+    for(Neighbour<T> each : others){
+      if(each.distance() < mu){
+        inside.add(each.item());
+      } else {
+        outside.add(each.item());
+      }
+    }
+
+    return new Node<>(vantage, mu, build(inside, distance), build(outside, distance));
+  }
+
+  /**
+   * @return number of indexed items.
+   */
+  public int size(){
+    return size;
+  }
+
+  /**
+   * @return true if this tree has no items.
+   */
+  public boolean isEmpty(){
+    return size() == 0;
+  }
+
+  /**
+   * Finds the indexed item closest to a query.
+   *
+   * @param query the query item.
+   * @return the nearest item; null if the tree is empty.
+   */
+  public T nearest(T query){
+    return nearest(query, (q, item, d) -> d, DoubleUnaryOperator.identity());
+  }
+
+  /**
+   * Finds the indexed item with the lowest cost with respect to a query. The cost need
+   * not be a metric, but for any item {@code x} it must hold that
+   * {@code cost(query, x) >= bound(distance(query, x))}, where bound is non-decreasing.
+   *
+   * @param query the query item.
+   * @param cost the cost of an item, given its distance to the query.
+   * @param bound the lowest cost of an item at some distance (or farther) from the query.
+   * @return the item with the lowest cost; null if the tree is empty.
+   */
+  public T nearest(T query, Cost<T> cost, DoubleUnaryOperator bound){
+    Objects.requireNonNull(cost);
+    Objects.requireNonNull(bound);
+
+    final Neighbour<T> best = nearest(root, query, cost, bound, null);
+    return best == null ? null : best.item();
+  }
+
+  private Neighbour<T> nearest(Node<T> node, T query, Cost<T> cost, DoubleUnaryOperator bound,
+          Neighbour<T> best){
+
+    if(node == null) return best;
+
+    final double d = distance.applyAsDouble(query, node.vantage);
+    final double c = cost.of(query, node.vantage, d);
+    if(best == null || c < best.distance()){
+      best = new Neighbour<>(node.vantage, c);
+    }
+
+    // items inside are more than (d - mu) away from the query; items outside,
+    // at least (mu - d) away.
+    final boolean inside = d < node.mu;
+
+    best = nearest(inside ? node.inside : node.outside, query, cost, bound, best);
+    if(bound.applyAsDouble(Math.abs(d - node.mu)) <= best.distance()){
+      best = nearest(inside ? node.outside : node.inside, query, cost, bound, best);
+    }
+
+    return best;
+  }
+
+  /**
+   * Finds all indexed items within some distance of a query.
+   *
+   * @param query the query item.
+   * @param radius the maximum distance (inclusive).
+   * @return the list of neighbours (and their distance to the query) within radius.
+   */
+  public List<Neighbour<T>> withinRadius(T query, double radius){
+    final List<Neighbour<T>> result = new ArrayList<>();
+    withinRadius(root, query, radius, result);
+    return result;
+  }
+
+  private void withinRadius(Node<T> node, T query, double radius, List<Neighbour<T>> result){
+    if(node == null) return;
+
+    final double d = distance.applyAsDouble(query, node.vantage);
+    if(d <= radius){
+      result.add(new Neighbour<>(node.vantage, d));
+    }
+
+    if(d - radius < node.mu){
+      withinRadius(node.inside, query, radius, result);
+    }
+
+    if(d + radius >= node.mu){
+      withinRadius(node.outside, query, radius, result);
+    }
+  }
+
+  /**
+   * The cost of an item with respect to a query item.
+   *
+   * @param <T> item type
+   */
+  public interface Cost <T> {
+    /**
+     * @param query the query item.
+     * @param item the indexed item.
+     * @param distance the distance between the query and the item.
+     * @return the cost of the item.
+     */
+    double of(T query, T item, double distance);
+  }
+
+  /**
+   * An item and its distance to some query item.
+   *
+   * @param <T> item type
+   */
+  public static class Neighbour <T> implements Comparable<Neighbour<T>> {
+    private final T       item;
+    private final double  distance;
+
+    Neighbour(T item, double distance){
+      this.item     = item;
+      this.distance = distance;
+    }
+
+    /**
+     * @return the neighbour item.
+     */
+    public T item(){
+      return item;
+    }
+
+    /**
+     * @return the distance between this neighbour and the query item.
+     */
+    public double distance(){
+      return distance;
+    }
+
+    @Override public int compareTo(Neighbour<T> that) {
+      return Double.compare(distance(), that.distance());
+    }
+
+    @Override public String toString() {
+      return item + " (" + distance + ")";
+    }
+  }
+
+  private static class Node <T> {
+    final T       vantage;
+    final double  mu;
+    final Node<T> inside;
+    final Node<T> outside;
+
+    Node(T vantage, double mu, Node<T> inside, Node<T> outside){
+      this.vantage  = vantage;
+      this.mu       = mu;
+      this.inside   = inside;
+      this.outside  = outside;
+    }
+  }
+}
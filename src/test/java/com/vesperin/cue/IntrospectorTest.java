@@ -7,16 +7,25 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.primitives.Floats;
 import com.vesperin.base.Source;
+import com.vesperin.base.locations.Location;
+import com.vesperin.base.locations.Locations;
+import com.vesperin.base.locators.UnitLocation;
 import com.vesperin.cue.utils.IO;
+import com.vesperin.cue.utils.KMedoids;
 import com.vesperin.cue.utils.Similarity;
 import com.vesperin.cue.utils.Sources;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.junit.Test;
 
 import java.io.File;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.core.Is.is;
@@ -59,9 +68,55 @@ public class IntrospectorTest {
     )
   );
 
+  private static final Source CALLER = Source.from("Caller",
+    Joiner.on("\n").join(
+      ImmutableList.of(
+        "class Caller {"
+        , " public static void main(String args[]) {"
+        , "   int num1, num2;"
+        , "   try {"
+        , "     num1 = 0;"
+        , "     num2 = 62 / num1;"
+        , "     println(\"Try block message\");"
+        , "   } catch (ArithmeticException e) {"
+        , "     println(\"Error: Don't divide a number by zero\");"
+        , "   }"
+        , "   println(\"I'm out of try-catch block in Java.\");"
+        , " }"
+        , " "
+        , " private static void println(String message){"
+        , "   System.out.println(message);"
+        , " }"
+        , "}"
+      )
+    )
+  );
+
+  private static final Source ANONYMOUS = Source.from("Anonymous",
+    Joiner.on("\n").join(
+      ImmutableList.of(
+        "public class Anonymous {"
+        , " public Runnable wrap(final int y){"
+        , "   return new Runnable(){"
+        , "     @Override public void run(){"
+        , "       if(y > 0){"
+        , "         for(int i = 0; i < y; i++){"
+        , "           System.out.println(i);"
+        , "         }"
+        , "       } else {"
+        , "         System.out.println(y);"
+        , "       }"
+        , "     }"
+        , "   };"
+        , " }"
+        , "}"
+      )
+    )
+  );
+
   @Test public void testCueBasic() throws Exception {
     final Set<String> expected = Sets.newHashSet(
-      "file", "create", "text", "process", "code", "configuration"
+      "file", "create", "text", "process", "code", "configuration", "system", "println", "error"
     );
 
     final List<String> concepts = Cue.newIntrospector().assignedConcepts(SRC).stream().sorted().collect(Collectors.toList());
@@ -82,7 +137,7 @@ public class IntrospectorTest {
     final Set<String> names = Sets.newHashSet("processFile");
 
     final Set<String> expected = Sets.newHashSet(
-      "file", "create", "text", "code", "configuration", "process"
+      "file", "create", "text", "code", "configuration", "process", "system", "println", "error"
     );
 
     final Set<String> concepts = Cue.newIntrospector().assignedConcepts(SRC, names).stream()
@@ -103,6 +158,41 @@ public class IntrospectorTest {
 
   }
 
+  @Test public void testPerMethodSegmentation() throws Exception {
+    final UnitLocation unit = Introspector.locateUnit(SRC, ImmutableSet.of());
+    assertNotNull(unit);
+    assertThat(Cue.newIntrospector().assignedConcepts(unit, 10, true).isEmpty(), is(false));
+
+    // the whole unit's capacity fits everything, but main's own capacity cannot
+    // fit the println method it calls
+    final UnitLocation caller  = Introspector.locateUnit(CALLER, ImmutableSet.of());
+    final Location     println = method(CALLER, "println");
+
+    assertThat(Introspector.generateIrrelevantSet(caller).isEmpty(), is(true));
+
+    final Set<Location> perMethod = Introspector.generatePerMethodIrrelevantSet(caller);
+    assertThat(perMethod.isEmpty(), is(false));
+    assertThat(perMethod.stream().allMatch(each -> Locations.covers(println, each)), is(true));
+
+    // run is segmented along with wrap, never on its own
+    final UnitLocation anonymous = Introspector.locateUnit(ANONYMOUS, ImmutableSet.of());
+    final UnitLocation run       = method(ANONYMOUS, "run");
+
+    assertThat(Introspector.generateIrrelevantSet(run).isEmpty(), is(false));
+    assertThat(
+      Introspector.generatePerMethodIrrelevantSet(anonymous).stream()
+        .noneMatch(each -> Locations.covers(run, each)),
+      is(true)
+    );
+  }
+
+  private static UnitLocation method(Source code, String name){
+    return Sources.from(code).locateMethods().stream()
+      .filter(each -> ((MethodDeclaration) each.getUnitNode()).getName().getIdentifier().equals(name))
+      .findFirst()
+      .orElseThrow(IllegalArgumentException::new);
+  }
+
   @Test public void testTypicalityScoreWithIntrospector() throws Exception {
 
     final Set<String>   relevant  = new HashSet<>();
@@ -127,6 +217,49 @@ public class IntrospectorTest {
   }
 
 
+  @Test public void testRepresentingMedoids() throws Exception {
+    final Set<Source> files = collectJavaFilesInResources().stream()
+      .map(Sources::from).collect(Collectors.toSet());
+
+    final Set<String> relevant = ImmutableSet.of("sort", "sortSet");
+
+    final List<Source> representative = Cue.newIntrospector().representativeMedoidsQuery(2, files, relevant);
+
+    assertEquals(2, representative.size());
+
+    // a sample of 6 numbers (out of 1000) is enough to find the two clusters
+    final List<Integer> numbers = new ArrayList<>();
+    for(int i = 0; i < 500; i++){
+      numbers.add(i % 5);
+      numbers.add(100 + (i % 5));
+    }
+
+    final KMedoids<Integer> medoids = new KMedoids<>(2, (a, b) -> Math.abs(a - b), 6, 5, 10, new Random(1));
+    final Set<Integer> centers = medoids.cluster(numbers).keySet();
+
+    assertEquals(2, centers.size());
+    assertTrue(centers.stream().anyMatch(c -> c < 5));
+    assertTrue(centers.stream().anyMatch(c -> c >= 100));
+  }
+
+  @Test public void testMedoidsAreDeterministicByDefault() throws Exception {
+    // more numbers than the default sample size, spread out so samples disagree
+    final Random random = new Random(1);
+    final List<Integer> numbers = new ArrayList<>();
+    for(int i = 0; i < 1000; i++){
+      numbers.add(random.nextInt(100000));
+    }
+
+    final Map<Integer, List<Integer>> expected = new KMedoids<Integer>(3, (a, b) -> Math.abs(a - b)).cluster(numbers);
+    for(int i = 0; i < 5; i++){
+      assertEquals(expected, new KMedoids<Integer>(3, (a, b) -> Math.abs(a - b)).cluster(numbers));
+    }
+
+    final Set<Integer> seeded = new KMedoids<Integer>(3, (a, b) -> Math.abs(a - b), new Random(KMedoids.SEED))
+      .cluster(numbers).keySet();
+    assertEquals(expected.keySet(), seeded);
+  }
+
   @Test public void testRepresentativeVsTypicalMeasures() throws Exception {
     final Set<Source> files = collectJavaFilesInResources().stream()
       .map(Sources::from).collect(Collectors.toSet());
@@ -153,6 +286,145 @@ public class IntrospectorTest {
     assertEquals(mostTypical, Corpus.four());
   }
 
+  @Test public void testCascadeTypicalityScore() throws Exception {
+    final Set<String>   relevant  = new HashSet<>();
+    final Set<Source>   corpusSet = Corpus.getSourceFiles().stream().collect(Collectors.toSet());
+
+    final Introspector.CascadeTypicalityProcessor processor =
+      new Introspector.CascadeTypicalityProcessor(3, 0.3, relevant);
+
+    final List<Source> typical = Cue.newIntrospector().typicalityQuery(1, corpusSet, processor);
+
+    assertEquals(Corpus.four(), typical.stream().findFirst().orElse(null));
+    assertEquals(1, processor.queryCount());
+    assertTrue(processor.changedCount() <= processor.queryCount());
+  }
+
+  @Test public void testRangeLimitedTypicalityScore() throws Exception {
+    final Set<String>   relevant  = new HashSet<>();
+    final Set<Source>   corpusSet = Corpus.getSourceFiles().stream().collect(Collectors.toSet());
+
+    final List<Source> everything = Cue.newIntrospector().typicalityQuery(corpusSet.size(), corpusSet,
+      new Introspector.NeighbourhoodTypicalityProcessor(0.3, 1.0, relevant));
+
+    assertEquals(corpusSet.size(), everything.size());
+
+    final List<Source> nearby = Cue.newIntrospector().typicalityQuery(2, corpusSet,
+      new Introspector.NeighbourhoodTypicalityProcessor(0.3, 0.5, relevant));
+
+    assertEquals(2, nearby.size());
+  }
+
+  @Test public void testUnboundedRangeMatchesExactTypicality() throws Exception {
+    final Set<String>   relevant  = new HashSet<>();
+    final Set<Source>   corpusSet = Corpus.getSourceFiles().stream().collect(Collectors.toSet());
+
+    final Introspector.SegmentsTypicalityProcessor exact =
+      new Introspector.SegmentsTypicalityProcessor(0.3, relevant);
+    final Introspector.NeighbourhoodTypicalityProcessor range =
+      new Introspector.NeighbourhoodTypicalityProcessor(0.3, Double.POSITIVE_INFINITY, relevant);
+
+    // same features for both processors
+    final Set<Introspector.Feature<String>> features = exact.from(corpusSet);
+
+    final Map<Introspector.Feature<String>, Double> expected = exact.typicality(features);
+    final Map<Introspector.Feature<String>, Double> actual   = range.typicality(features);
+
+    assertEquals(expected.keySet(), actual.keySet());
+    for(Introspector.Feature<String> each : features){
+      assertEquals(expected.get(each), actual.get(each), 1e-9);
+    }
+
+    assertEquals(topK(3, expected), topK(3, actual));
+
+    for(Introspector.Feature<String> each : features){
+      assertEquals(expected.get(each), exact.typicality(each, features), 1e-9);
+    }
+
+    // an empty summary is as far as it gets from any other summary
+    assertEquals(1.0, Introspector.distance("", "foo"), 0.0);
+    assertEquals(0.0, Introspector.distance("", ""), 0.0);
+  }
+
+  @Test public void testSampledTypicalityWithEnoughBudgetIsExact() throws Exception {
+    final Set<String>   relevant  = new HashSet<>();
+    final Set<Source>   corpusSet = Corpus.getSourceFiles().stream().collect(Collectors.toSet());
+
+    final Introspector.SegmentsTypicalityProcessor exact =
+      new Introspector.SegmentsTypicalityProcessor(0.3, relevant);
+
+    // same features for both processors
+    final Set<Introspector.Feature<String>> features = exact.from(corpusSet);
+    final Map<Source, Introspector.Feature<String>> bySource = features.stream()
+      .collect(Collectors.toMap(Introspector.Feature::source, each -> each));
+
+    final Introspector.SampledTypicalityProcessor sampled = new Introspector.SampledTypicalityProcessor(
+      0.3, 1, TimeUnit.HOURS, relevant, new Random(1)) {
+      @Override public Introspector.Feature<String> from(Source source) {
+        return bySource.get(source);
+      }
+    };
+
+    final Map<Introspector.Feature<String>, Double> expected = exact.typicality(features);
+    final List<Introspector.Estimate> estimates = sampled.estimate(corpusSet.size(), corpusSet);
+
+    assertEquals(corpusSet.size(), estimates.size());
+    for(Introspector.Estimate each : estimates){
+      assertEquals(corpusSet.size() - 1, each.samples());
+      assertEquals(expected.get(bySource.get(each.source())), each.typicality(), 1e-9);
+      assertEquals(each.typicality(), each.lower(), 1e-9);
+      assertEquals(each.typicality(), each.upper(), 1e-9);
+    }
+  }
+
+  private static List<Source> topK(int k, Map<Introspector.Feature<String>, Double> scores){
+    return scores.keySet().stream()
+      .sorted((a, b) -> Double.compare(scores.get(b), scores.get(a)))
+      .limit(k)
+      .map(Introspector.Feature::source)
+      .collect(Collectors.toList());
+  }
+
+  @Test public void testConceptVectorTypicalityScore() throws Exception {
+    final Set<String>   relevant  = new HashSet<>();
+    final Set<Source>   corpusSet = Corpus.getSourceFiles().stream().collect(Collectors.toSet());
+
+    final Introspector.ConceptVectorTypicalityProcessor processor =
+      new Introspector.ConceptVectorTypicalityProcessor(0.3, true, relevant);
+
+    final List<Source> first  = Cue.newIntrospector().typicalityQuery(2, corpusSet, processor);
+    final List<Source> second = Cue.newIntrospector().typicalityQuery(2, corpusSet, processor);
+
+    assertEquals(2, first.size());
+    assertEquals(first, second);
+    assertEquals(corpusSet.size(), processor.cachedCount());
+
+    final Introspector.ConceptVectorTypicalityProcessor bounded =
+      new Introspector.ConceptVectorTypicalityProcessor(0.3, true, relevant, 2);
+
+    assertEquals(2, Cue.newIntrospector().typicalityQuery(2, corpusSet, bounded).size());
+    assertTrue(bounded.cachedCount() <= 2);
+  }
+
+  @Test public void testBudgetedTypicalityScore() throws Exception {
+    final Set<String>   relevant  = new HashSet<>();
+    final Set<Source>   corpusSet = Corpus.getSourceFiles().stream().collect(Collectors.toSet());
+
+    // enough time to sample every pair; i.e., the exact answer
+    final List<Introspector.Estimate> exact = Cue.newIntrospector()
+      .typicalityQuery(1, 0.3, 1, TimeUnit.MINUTES, corpusSet, relevant);
+
+    assertEquals(1, exact.size());
+    assertEquals(Corpus.four(), exact.get(0).source());
+    assertTrue(exact.get(0).lower() <= exact.get(0).typicality());
+    assertTrue(exact.get(0).typicality() <= exact.get(0).upper());
+
+    final List<Introspector.Estimate> rough = Cue.newIntrospector()
+      .typicalityQuery(2, 0.3, 1, TimeUnit.NANOSECONDS, corpusSet, relevant);
+
+    assertEquals(2, rough.size());
+  }
+
   @Test public void testMostTypicalSortingImplementation() throws Exception {
     final Set<Source> files = collectJavaFilesInResources().stream()
       .map(Sources::from).collect(Collectors.toSet());
@@ -1,22 +1,47 @@
 package com.vesperin.cue.segment;
 
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import com.vesperin.base.Context;
 import com.vesperin.base.EclipseJavaParser;
 import com.vesperin.base.JavaParser;
+import com.vesperin.base.Source;
+import com.vesperin.base.locations.Location;
 import com.vesperin.base.locations.Locations;
 import com.vesperin.base.locators.UnitLocation;
+import com.vesperin.base.utils.Jdt;
+import com.vesperin.cue.spi.CycleEdgesException;
+import com.vesperin.cue.spi.Edge;
+import com.vesperin.cue.text.TokenIterator;
+import com.vesperin.cue.utils.OccurrenceIndex;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.SimpleName;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import static com.vesperin.cue.segment.TestCode.locateMethod;
+import static com.vesperin.cue.segment.TestCode.segmentationGraph;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * @author Huascar Sanchez
@@ -111,6 +136,375 @@ public class BlockSegmentationGraphTest {
     assertThat(graph.edgeSet().size() == 6, is(true));
   }
 
+  @Test public void testCycleEdgesAreRejected() throws Exception {
+    final UnitLocation locatedUnit = locateMethod(CONTEXT.get(TRY_CATCH), "main");
+
+    final SegmentationGraph graph = segmentationGraph(locatedUnit);
+    final Edge<Segment>     edge  = graph.edgeSet().iterator().next();
+    final Edge<Segment>     back  = graph.edgeFactory().make(edge.to(), edge.from(), 0.0);
+
+    try {
+      graph.addEdge(back.from(), back.to());
+      fail("Expected a CycleEdgesException");
+    } catch (CycleEdgesException ignored){}
+
+    assertThat(graph.edgeSet().size() == 6, is(true));
+    assertThat(graph.containsEdge(back.from(), back.to()), is(false));
+
+    try {
+      graph.addAllEdges(Collections.singletonList(back));
+      fail("Expected a CycleEdgesException");
+    } catch (CycleEdgesException ignored){}
+
+    assertThat(graph.edgeSet().size() == 6, is(true));
+    assertThat(graph.hasCycle(), is(false));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test public void testSegmentsAreFoundByNodeIdentity() throws Exception {
+    final Context context = PARSER.parseJava(Source.from("Twins", Joiner.on("\n").join(
+      ImmutableList.of(
+        "class Twins {"
+        , "  void run(int x){"
+        , "    if(x > 0) { x++; }"
+        , "    if(x < 0) { x++; }"
+        , "  }"
+        , "}"
+      )
+    )));
+
+    final SegmentationGraph graph  = segmentationGraph(locateMethod(context, "run"));
+    final List<Block>       blocks = new ArrayList<>();
+    context.getCompilationUnit().accept(new ASTVisitor() {
+      @Override public boolean visit(Block node) {
+        blocks.add(node);
+        return true;
+      }
+    });
+
+    // the method body, and two blocks with the same code
+    assertThat(blocks.size(), is(3));
+    assertThat(blocks.get(1).toString(), is(blocks.get(2).toString()));
+
+    final Set<Segment> segments = Collections.newSetFromMap(new IdentityHashMap<>());
+    for(Block each : blocks){
+      final Segment segment = graph.segmentOf(each);
+
+      assertNotNull(segment);
+      assertThat(segment.data() == each, is(true));
+      assertThat(segments.add(segment), is(true));
+    }
+
+    assertThat(graph.segmentOf(context.getCompilationUnit()) == null, is(true));
+
+    // labels are taken when first asked for, and kept from then on
+    final Segment twin  = graph.segmentOf(blocks.get(2));
+    final Block   block = blocks.get(2);
+    block.statements().add(block.getAST().newEmptyStatement());
+
+    final String label = twin.label();
+    assertThat(label, is(block.toString()));
+    assertThat(label.equals(blocks.get(1).toString()), is(false));
+
+    block.statements().clear();
+    assertThat(twin.label() == label, is(true));
+  }
+
+  @Test public void testDescendantsAreTransitive() throws Exception {
+    final Context context = CONTEXT.get(TRY_CATCH);
+    final List<UnitLocation> locatedUnitList = context.locateUnit(Locations.locate(context.getCompilationUnit()));
+    final UnitLocation locatedUnit = locatedUnitList.get(0);
+    assertNotNull(locatedUnit);
+
+    final BlockSegmentationVisitor blockSegmentation = new BlockSegmentationVisitor(locatedUnit);
+    locatedUnit.getUnitNode().accept(blockSegmentation);
+
+    final SegmentationGraph graph = blockSegmentation.getBlockSegmentationGraph();
+    checkDescendants(graph);
+
+    graph.removeEdge(graph.edgeSet().iterator().next());
+    checkDescendants(graph);
+  }
+
+  @Test public void testTokenIteratorSkipsIrrelevantSegments() throws Exception {
+    final UnitLocation locatedUnit = locateMethod(CONTEXT.get(TRY_CATCH), "main");
+
+    final Set<Location> irrelevant = segmentationGraph(locatedUnit).irrelevantSet(8);
+    assertThat(irrelevant.isEmpty(), is(false));
+
+    final TokenIterator extractor = new TokenIterator(irrelevant);
+    locatedUnit.getUnitNode().accept(extractor);
+
+    // tokens of every name outside the irrelevant set, one name at a time
+    final List<String> expected = new ArrayList<>();
+    locatedUnit.getUnitNode().accept(new ASTVisitor() {
+      @Override public boolean visit(SimpleName node) {
+        final Location location = Locations.locate(node);
+        if(irrelevant.stream().noneMatch(each -> Locations.covers(each, location))){
+          final TokenIterator tokens = new TokenIterator();
+          node.accept(tokens);
+          expected.addAll(tokens.getItems());
+        }
+
+        return false;
+      }
+    });
+
+    assertThat(extractor.getItems(), is(expected));
+  }
+
+  private static void checkDescendants(SegmentationGraph graph){
+    for(Segment parent : graph.vertexSet()){
+      // segments reachable from parent
+      final Set<Segment>   reached = new HashSet<>();
+      final List<Segment>  pending = new ArrayList<>(Collections.singletonList(parent));
+      while(!pending.isEmpty()){
+        for(Edge<Segment> each : graph.outgoingEdgesOf(pending.remove(pending.size() - 1))){
+          if(reached.add(each.to())) pending.add(each.to());
+        }
+      }
+
+      for(Segment child : graph.vertexSet()){
+        assertThat(graph.isDescendantOf(child, parent), is(reached.contains(child)));
+      }
+    }
+  }
+
+  @Test public void testTreeKnapsackKeepsParents() throws Exception {
+    final UnitLocation locatedUnit = locateMethod(CONTEXT.get(TRY_CATCH), "main");
+
+    final FrozenSegmentationGraph graph = segmentationGraph(locatedUnit).freeze();
+
+    for(int capacity = 0; capacity <= 20; capacity++){
+      final BitSet keep = SegmentationSolver.treeKnapsack().solve(graph, capacity);
+
+      double used = 0.0;
+      for(int idx = keep.nextSetBit(0); idx >= 0; idx = keep.nextSetBit(idx + 1)){
+        used += graph.weight(idx);
+
+        final int parent = graph.parentOf(idx);
+        assertThat(parent < 0 || keep.get(parent), is(true));
+      }
+
+      assertThat(used <= capacity, is(true));
+    }
+  }
+
+  @Test public void testParallelFillMatchesSequentialFill() throws Exception {
+    final UnitLocation locatedUnit = locateMethod(CONTEXT.get(TRY_CATCH), "main");
+
+    final FrozenSegmentationGraph graph = segmentationGraph(locatedUnit).freeze();
+
+    final SegmentationSolver parallel   = SegmentationSolver.itemList(1);
+    final SegmentationSolver sequential = SegmentationSolver.itemList(Long.MAX_VALUE);
+
+    for(int capacity : new int[]{4, 8, 20, 4095, 4096, 4097, 10000}){
+      assertThat(parallel.solve(graph, capacity), is(sequential.solve(graph, capacity)));
+    }
+  }
+
+  @Test public void testApproximateSolverStaysWithinCapacity() throws Exception {
+    final UnitLocation locatedUnit = locateMethod(CONTEXT.get(TRY_CATCH), "main");
+
+    final FrozenSegmentationGraph graph = segmentationGraph(locatedUnit).freeze();
+
+    final int N = graph.size();
+
+    // 2 * N buckets, so weights get scaled once capacity goes beyond that, unless
+    // the budget is one cell short of the scaled table
+    final ApproximateSolver scaled = new ApproximateSolver(0.5, Long.MAX_VALUE);
+    final ApproximateSolver greedy = new ApproximateSolver(0.5, N * (2L * N + 1) - 1);
+
+    assertThat(scaled.epsilon(graph, 20), is(0.5));
+    assertThat(greedy.epsilon(graph, 20), is(1.0));
+    assertThat(greedy.epsilon(graph, 2 * N - 1), is(0.0));
+
+    // solvers, and the epsilon they were asked for
+    final Map<ApproximateSolver, Double> solvers = new LinkedHashMap<>();
+    solvers.put(scaled, 0.5);
+    solvers.put(greedy, 0.5);
+    for(double epsilon : new double[]{0.1, 0.25, 0.9}){
+      solvers.put(new ApproximateSolver(epsilon, Long.MAX_VALUE), epsilon);
+    }
+
+    for(int capacity = 0; capacity <= 20; capacity++){
+      final double bound = SegmentationSolver.upperBound(graph, capacity);
+
+      for(ApproximateSolver solver : solvers.keySet()){
+        final BitSet keep = solver.solve(graph, capacity);
+
+        assertThat(weightOf(graph, keep) <= capacity, is(true));
+        assertThat(benefitOf(graph, keep) <= bound + 1e-9, is(true));
+
+        for(int idx = keep.nextSetBit(0); idx >= 0; idx = keep.nextSetBit(idx + 1)){
+          final int parent = graph.parentOf(idx);
+          assertThat(parent < 0 || keep.get(parent), is(true));
+        }
+
+        // at least as good as the optimum within (1 - epsilon) of the capacity, for
+        // the requested epsilon, unless the budget forced the greedy pass
+        if(solver == greedy && solver.epsilon(graph, capacity) == 1.0) continue;
+
+        final double epsilon = solvers.get(solver);
+        assertThat(solver.epsilon(graph, capacity) <= epsilon, is(true));
+
+        final int    reduced = (int) Math.floor((1.0 - epsilon) * capacity);
+        final BitSet optimum = SegmentationSolver.treeKnapsack().solve(graph, reduced);
+
+        assertThat(benefitOf(graph, keep) >= benefitOf(graph, optimum) - 1e-9, is(true));
+      }
+    }
+  }
+
+  private static double weightOf(FrozenSegmentationGraph graph, BitSet keep){
+    double weight = 0.0;
+    for(int idx = keep.nextSetBit(0); idx >= 0; idx = keep.nextSetBit(idx + 1)){
+      weight += graph.weight(idx);
+    }
+
+    return weight;
+  }
+
+  private static double benefitOf(FrozenSegmentationGraph graph, BitSet keep){
+    double benefit = 0.0;
+    for(int idx = keep.nextSetBit(0); idx >= 0; idx = keep.nextSetBit(idx + 1)){
+      benefit += graph.benefit(idx);
+    }
+
+    return benefit;
+  }
+
+  @Test public void testFrozenGraphAnswersWithoutSegments() throws Exception {
+    final UnitLocation locatedUnit = locateMethod(CONTEXT.get(TRY_CATCH), "main");
+
+    final SegmentationGraph       graph  = segmentationGraph(locatedUnit);
+    final FrozenSegmentationGraph frozen = graph.freeze();
+
+    final Set<Integer> universe = graph.vertexSet().stream()
+      .map(each -> each.location().getStart().getOffset())
+      .collect(Collectors.toSet());
+
+    final SegmentationSolver solver = SegmentationSolver.defaultSolver();
+    for(int capacity = 0; capacity <= 20; capacity++){
+      // the segments the solver drops, located through their AST nodes
+      final Set<List<Integer>> expected = new HashSet<>();
+      if(capacity > 3 && frozen.size() > 1){
+        final BitSet keep = solver.solve(frozen, capacity);
+        for(int n = keep.nextClearBit(0); n < frozen.size(); n = keep.nextClearBit(n + 1)){
+          expected.add(span(Locations.locate(graph.segmentAt(n).data())));
+        }
+      }
+
+      assertThat(spans(frozen.irrelevantSet(capacity, solver)), is(expected));
+    }
+
+    assertThat(spans(frozen.irrelevantSet(8, solver)).isEmpty(), is(false));
+
+    final Set<Integer> irrelevant = offsets(frozen.irrelevantSet(locatedUnit));
+    final Set<Integer> relevant   = offsets(frozen.relevantSet(locatedUnit));
+
+    assertThat(irrelevant.isEmpty(), is(false));
+    assertThat(Collections.disjoint(irrelevant, relevant), is(true));
+    assertThat(universe.size(), is(irrelevant.size() + relevant.size()));
+    assertThat(universe.containsAll(irrelevant) && universe.containsAll(relevant), is(true));
+  }
+
+  private static Set<List<Integer>> spans(Set<Location> locations){
+    return locations.stream()
+      .map(BlockSegmentationGraphTest::span)
+      .collect(Collectors.toSet());
+  }
+
+  private static List<Integer> span(Location location){
+    return Arrays.asList(location.getStart().getOffset(), location.getEnd().getOffset());
+  }
+
+  private static Set<Integer> offsets(Set<Location> locations){
+    return locations.stream()
+      .map(each -> each.getStart().getOffset())
+      .collect(Collectors.toSet());
+  }
+
+  @Test public void testUnitAnalysisMatchesVisitors() throws Exception {
+    for(Context context : CONTEXT.values()){
+      final CompilationUnit root     = context.getCompilationUnit();
+      final UnitAnalysis    analysis = UnitAnalysis.of(root);
+      final OccurrenceIndex index    = OccurrenceIndex.of(root);
+
+      root.accept(new ASTVisitor() {
+        @Override public boolean visit(Block node) {
+          final UnitAnalysis.BlockInfo block = analysis.blockOf(node);
+          assertNotNull(block);
+
+          final BlockVisitor blocks = new BlockVisitor();
+          node.accept(blocks);
+          assertThat(block.blocks(), is(blocks.getCodeBlocks()));
+
+          double benefit = 0;
+          for(ASTNode each : Jdt.getChildren(node)){
+            final ElementsVisitor elements = new ElementsVisitor();
+            each.accept(elements);
+            for(SimpleName eachName : elements.getNodes()){
+              benefit += Math.abs(index.countOf(eachName) - 1);
+            }
+          }
+
+          assertThat(Math.abs(block.benefit(1) - benefit) < 1e-9, is(true));
+          return true;
+        }
+      });
+
+      for(UnitLocation each : context.locateMethods()){
+        final Set<Location> irrelevant = segmentationGraph(each).irrelevantSet(8);
+
+        final TokenIterator extractor = new TokenIterator(irrelevant);
+        each.getUnitNode().accept(extractor);
+
+        assertThat(analysis.tokensOf(each.getUnitNode(), irrelevant), is(extractor.getItems()));
+      }
+    }
+  }
+
+  @Test public void testPooledVisitorsMatchFreshVisitors() throws Exception {
+    for(Context context : CONTEXT.values()){
+      final BlockVisitor    blocks   = BlockVisitor.POOL.acquire();
+      final ElementsVisitor elements = ElementsVisitor.POOL.acquire();
+
+      try {
+        context.getCompilationUnit().accept(new ASTVisitor() {
+          @Override public void preVisit(ASTNode node) {
+            final Block expected = (Block) (node instanceof Block ? node : Jdt.getChildren(node).stream()
+              .filter(n -> (n instanceof Block))
+              .findFirst()
+              .orElse(null));
+
+            assertThat(BlockVisitor.findFirstBlock(node) == expected, is(true));
+          }
+
+          @Override public boolean visit(Block node) {
+            final BlockVisitor fresh = new BlockVisitor();
+            node.accept(fresh);
+
+            blocks.reset();
+            node.accept(blocks);
+            assertThat(blocks.getCodeBlocks(), is(fresh.getCodeBlocks()));
+
+            final ElementsVisitor freshElements = new ElementsVisitor();
+            node.accept(freshElements);
+
+            elements.reset();
+            node.accept(elements);
+            assertThat(elements.getNodes(), is(freshElements.getNodes()));
+            return true;
+          }
+        });
+      } finally {
+        BlockVisitor.POOL.release(blocks);
+        ElementsVisitor.POOL.release(elements);
+      }
+    }
+  }
+
   private static Predicate<UnitLocation> method(final String name){
     return (u -> ((MethodDeclaration)u.getUnitNode())
       .getName().getIdentifier().equals(name));
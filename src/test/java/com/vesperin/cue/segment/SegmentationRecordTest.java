@@ -0,0 +1,75 @@
+package com.vesperin.cue.segment;
+
+import com.vesperin.base.EclipseJavaParser;
+import com.vesperin.base.Source;
+import com.vesperin.base.locations.Location;
+import com.vesperin.base.locators.UnitLocation;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.vesperin.cue.segment.TestCode.locateMethod;
+import static com.vesperin.cue.segment.TestCode.segmentationGraph;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Huascar Sanchez
+ */
+public class SegmentationRecordTest {
+  @Test public void testSegmentationRecordRoundTrip() throws Exception {
+    final UnitLocation locatedUnit = locateMethod(new EclipseJavaParser().parseJava(TestCode.TRY_CATCH), "main");
+
+    final FrozenSegmentationGraph graph = segmentationGraph(locatedUnit).freeze();
+
+    final Path file = Files.createTempFile("segmentation", ".bin");
+    try {
+      SegmentationRecord.write(graph, locatedUnit, file);
+
+      final SegmentationRecord record = SegmentationRecord.read(file);
+      assertThat(record.size(), is(graph.size()));
+      assertThat(record.edgeCount(), is(graph.edgeCount()));
+
+      for(int n = 0; n < graph.size(); n++){
+        assertThat(record.start(n), is(graph.start(n)));
+        assertThat(record.end(n), is(graph.end(n)));
+        assertThat(record.depth(n), is(graph.depth(n)));
+        assertThat(record.parentOf(n), is(graph.parentOf(n)));
+        assertThat(record.weight(n), is(graph.weight(n)));
+        assertThat(record.benefit(n), is(graph.benefit(n)));
+      }
+
+      for(int e = 0; e < graph.edgeCount(); e++){
+        assertThat(record.edgeFrom(e), is(graph.edgeFrom(e)));
+        assertThat(record.edgeTo(e), is(graph.edgeTo(e)));
+      }
+
+      final Source source = locatedUnit.getSource();
+      assertThat(record.matches(source), is(true));
+      assertThat(offsets(record.relevantSet(source)), is(offsets(graph.relevantSet(locatedUnit))));
+      assertThat(offsets(record.irrelevantSet(source)), is(offsets(graph.irrelevantSet(locatedUnit))));
+    } finally {
+      Files.delete(file);
+    }
+
+    final ByteBuffer stale = SegmentationRecord.encode(graph, locatedUnit);
+    stale.putInt(4, SegmentationRecord.VERSION + 1);
+    try {
+      SegmentationRecord.of(stale);
+      fail("Records of unknown versions must be rejected");
+    } catch (IllegalArgumentException expected){
+      // expected
+    }
+  }
+
+  private static Set<Integer> offsets(Set<Location> locations){
+    return locations.stream()
+      .map(each -> each.getStart().getOffset())
+      .collect(Collectors.toSet());
+  }
+}
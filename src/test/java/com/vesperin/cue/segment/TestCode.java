@@ -2,7 +2,10 @@ package com.vesperin.cue.segment;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.vesperin.base.Context;
 import com.vesperin.base.Source;
+import com.vesperin.base.locators.UnitLocation;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
 
 /**
  * @author Huascar Sanchez
@@ -47,4 +50,31 @@ class TestCode {
       ,"}"
     )
   ));
+
+  /**
+   * Locates a method of some parsed test code.
+   *
+   * @param context the parsed test code.
+   * @param name the name of the method.
+   * @return the located method.
+   */
+  static UnitLocation locateMethod(Context context, String name){
+    return context.locateMethods().stream()
+      .filter(each -> ((MethodDeclaration) each.getUnitNode()).getName().getIdentifier().equals(name))
+      .findFirst()
+      .orElseThrow(() -> new IllegalArgumentException("no " + name + " method"));
+  }
+
+  /**
+   * Segments a located unit.
+   *
+   * @param locatedUnit the located unit.
+   * @return the unit's segmentation graph.
+   */
+  static SegmentationGraph segmentationGraph(UnitLocation locatedUnit){
+    final BlockSegmentationVisitor visitor = new BlockSegmentationVisitor(locatedUnit);
+    locatedUnit.getUnitNode().accept(visitor);
+
+    return visitor.getBlockSegmentationGraph();
+  }
 }
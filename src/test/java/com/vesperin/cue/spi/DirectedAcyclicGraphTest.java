@@ -0,0 +1,345 @@
+package com.vesperin.cue.spi;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Huascar Sanchez
+ */
+public class DirectedAcyclicGraphTest {
+
+  @Test public void testAddAllEdgesIsAllOrNothing() throws Exception {
+    final IntGraph graph = IntGraph.of(4);
+    graph.addEdge(0, 1);
+
+    // the first edge is fine, but the second one points to an unknown vertex
+    try {
+      graph.addAllEdges(ImmutableList.of(edge(1, 2), edge(2, 7)));
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException ignored){}
+
+    assertThat(graph.edgeSet().size(), is(1));
+    assertThat(graph.containsEdge(1, 2), is(false));
+
+    // the first edge is fine, but the second one closes a cycle
+    try {
+      graph.addAllEdges(ImmutableList.of(edge(1, 2), edge(2, 0)));
+      fail("Expected a CycleEdgesException");
+    } catch (CycleEdgesException ignored){}
+
+    assertThat(graph.edgeSet().size(), is(1));
+    assertThat(graph.containsEdge(1, 2), is(false));
+
+    assertThat(graph.addAllEdges(ImmutableList.of(edge(1, 2), edge(2, 3))), is(true));
+    assertThat(graph.edgeSet().size(), is(3));
+    assertThat(graph.hasCycle(), is(false));
+
+    try {
+      graph.addEdge(3, 0);
+      fail("Expected a CycleEdgesException");
+    } catch (CycleEdgesException ignored){}
+
+    assertThat(graph.edgeSet().size(), is(3));
+
+    // weighted edges are checked too
+    try {
+      graph.addEdge(3, 1, 1.0);
+      fail("Expected a CycleEdgesException");
+    } catch (CycleEdgesException ignored){}
+
+    assertThat(graph.edgeSet().size(), is(3));
+    assertThat(graph.containsEdge(3, 1), is(false));
+    assertThat(graph.hasCycle(), is(false));
+
+    // and the rejected edge leaves the order usable
+    assertThat(graph.addEdge(0, 3, 1.0), is(true));
+    assertThat(graph.findEdge(0, 3).weight(), is(1.0));
+  }
+
+  @Test public void testSetsAreBackedByTheGraph() throws Exception {
+    final IntGraph graph = IntGraph.of(3);
+
+    // what the interface's default mutators do
+    assertThat(graph.vertexSet().add(3), is(true));
+    assertThat(graph.vertexSet().add(3), is(false));
+    assertThat(graph.edgeSet().add(edge(0, 1)), is(true));
+    assertThat(graph.edgeSet().add(edge(0, 1)), is(false));
+    assertThat(graph.edgeSet().add(edge(1, 3)), is(true));
+    graph.addEdge(0, 2);
+
+    assertThat(graph.containsEdge(0, 1), is(true));
+    assertThat(graph.outDegreeOf(0), is(2));
+    assertThat(graph.inDegreeOf(3), is(1));
+
+    try {
+      graph.edgeSet().add(edge(0, 7));
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException ignored){}
+
+    // edges added through the set still take part in cycle detection
+    try {
+      graph.addEdge(3, 0);
+      fail("Expected a CycleEdgesException");
+    } catch (CycleEdgesException ignored){}
+
+    assertThat(graph.edgeSet().remove(graph.findEdge(0, 1)), is(true));
+    assertThat(graph.containsEdge(0, 1), is(false));
+    assertThat(graph.outgoingEdgesOf(0).size(), is(1));
+
+    // edges are kept in insertion order: (1, 3), then (0, 2)
+    final Iterator<Edge<Integer>> edges = graph.edgeSet().iterator();
+    edges.next();
+    edges.remove();
+
+    assertThat(graph.size(), is(1));
+    assertThat(graph.containsEdge(1, 3), is(false));
+    assertThat(graph.inDegreeOf(3), is(0));
+
+    // removing a vertex takes its edges with it
+    assertThat(graph.vertexSet().remove(2), is(true));
+    assertThat(graph.containsVertex(2), is(false));
+    assertThat(graph.size(), is(0));
+    assertThat(graph.outDegreeOf(0), is(0));
+  }
+
+  @Test public void testSetsGoThroughOverriddenMutators() throws Exception {
+    final List<String> calls = new ArrayList<>();
+    final IntGraph graph = new IntGraph(){
+      @Override public boolean addEdge(Integer from, Integer to, double weight) {
+        calls.add("add " + from + "->" + to);
+        return super.addEdge(from, to, weight);
+      }
+
+      @Override public boolean removeEdge(Edge<Integer> e) {
+        calls.add("remove " + e.from() + "->" + e.to());
+        return super.removeEdge(e);
+      }
+
+      @Override public boolean removeVertex(Integer v) {
+        calls.add("remove " + v);
+        return super.removeVertex(v);
+      }
+    };
+
+    for(int v = 0; v < 4; v++){
+      graph.vertexSet().add(v);
+    }
+
+    graph.edgeSet().add(edge(0, 1));
+    graph.edgeSet().add(edge(1, 2));
+    graph.edgeSet().remove(graph.findEdge(0, 1));
+
+    final Iterator<Edge<Integer>> edges = graph.edgeSet().iterator();
+    edges.next();
+    edges.remove();
+
+    graph.vertexSet().remove(3);
+
+    final Iterator<Integer> vertices = graph.vertexSet().iterator();
+    vertices.next();
+    vertices.remove();
+
+    assertThat(calls, is(Arrays.asList(
+      "add 0->1", "add 1->2", "remove 0->1", "remove 1->2", "remove 3", "remove 0"
+    )));
+
+    assertThat(graph.vertexSet().size(), is(2));
+    assertThat(graph.size(), is(0));
+  }
+
+  @Test public void testCompactGraphMatchesGraph() throws Exception {
+    // 1 is isolated, and 1, 3 and 5 (the last vertex) have empty rows
+    final IntGraph graph = IntGraph.of(6);
+    graph.addRootVertex(0);
+    graph.addEdge(0, 5);
+    graph.addEdge(0, 2);
+    graph.addEdge(0, 3);
+    graph.addEdge(2, 5);
+    graph.addEdge(2, 3);
+    graph.addEdge(4, 3);
+    graph.addEdge(3, 5);
+
+    final CompactDirectedAcyclicGraph<Integer, Edge<Integer>> compact = CompactDirectedAcyclicGraph.copyOf(graph);
+
+    assertThat(compact.vertexCount(), is(graph.vertexSet().size()));
+    assertThat(compact.size(), is(graph.edgeSet().size()));
+    assertThat(compact.getRootVertex(), is(0));
+
+    for(Integer from : graph.vertexSet()){
+      assertThat(compact.indexOf(from), is(from));
+      assertThat(compact.inDegreeOf(from), is(graph.inDegreeOf(from)));
+      assertThat(compact.outDegreeOf(from), is(graph.outDegreeOf(from)));
+
+      for(Integer to : graph.vertexSet()){
+        assertThat(compact.containsEdge(from, to), is(graph.containsEdge(from, to)));
+      }
+
+      // rows are sorted by target, whatever the order edges were added in
+      for(int k = 1; k < compact.outDegree(from); k++){
+        assertThat(compact.successor(from, k - 1) < compact.successor(from, k), is(true));
+      }
+    }
+
+    assertThat(compact.outDegree(1) + compact.inDegree(1), is(0));
+    assertThat(compact.outgoingEdgesOf(5).isEmpty(), is(true));
+
+    // edges are made from the rows, so each one must come out of the right row
+    assertThat(pairs(compact.edgeSet()), is(pairs(graph.edgeSet())));
+    for(Integer each : graph.vertexSet()){
+      assertThat(pairs(compact.outgoingEdgesOf(each)), is(pairs(graph.outgoingEdgesOf(each))));
+      assertThat(pairs(compact.incomingEdgesOf(each)), is(pairs(graph.incomingEdgesOf(each))));
+    }
+
+    for(Edge<Integer> each : graph.edgeSet()){
+      assertThat(compact.edgeSet().contains(each), is(true));
+
+      for(Integer vertex : graph.vertexSet()){
+        assertThat(compact.outgoingEdgesOf(vertex).contains(each), is(vertex.equals(each.from())));
+        assertThat(compact.incomingEdgesOf(vertex).contains(each), is(vertex.equals(each.to())));
+      }
+    }
+
+    // 2 is a predecessor of 3, and it also has 5 as a successor
+    assertThat(compact.incomingEdgesOf(3).contains(edge(2, 5)), is(false));
+    assertThat(compact.incomingEdgesOf(5).contains(edge(2, 3)), is(false));
+
+    // every vertex comes after its predecessors
+    final int[] position = new int[compact.vertexCount()];
+    final int[] order    = compact.topologicalOrder();
+    assertThat(order.length, is(compact.vertexCount()));
+    for(int idx = 0; idx < order.length; idx++){
+      position[order[idx]] = idx;
+    }
+
+    for(int v = 0; v < compact.vertexCount(); v++){
+      for(int k = 0; k < compact.outDegree(v); k++){
+        assertThat(position[v] < position[compact.successor(v, k)], is(true));
+      }
+    }
+
+    // repeated edges are kept once
+    final CompactDirectedAcyclicGraph.Builder<Integer, Edge<Integer>> duplicates =
+      CompactDirectedAcyclicGraph.newBuilder(IntGraph.FACTORY);
+
+    duplicates.addVertex(0);
+    duplicates.addVertex(1);
+    duplicates.addVertex(2);
+    duplicates.addEdge(0, 2).addEdge(0, 2, 1.0).addEdge(0, 1).addEdge(0, 2);
+
+    final CompactDirectedAcyclicGraph<Integer, Edge<Integer>> deduplicated = duplicates.build();
+    assertThat(deduplicated.size(), is(2));
+    assertThat(deduplicated.outDegree(0), is(2));
+    assertThat(deduplicated.inDegree(2), is(1));
+    assertThat(deduplicated.successorWeight(0, 1), is(0.0));
+
+    final CompactDirectedAcyclicGraph.Builder<Integer, Edge<Integer>> cyclic =
+      CompactDirectedAcyclicGraph.newBuilder(IntGraph.FACTORY);
+
+    cyclic.addVertex(0);
+    cyclic.addVertex(1);
+    cyclic.addEdge(0, 1).addEdge(1, 0);
+
+    try {
+      cyclic.build();
+      fail("Expected a CycleEdgesException");
+    } catch (CycleEdgesException ignored){}
+  }
+
+  private static Set<List<Integer>> pairs(Set<Edge<Integer>> edges){
+    final Set<List<Integer>> pairs = new HashSet<>();
+    for(Edge<Integer> each : edges){
+      assertThat(pairs.add(Arrays.asList(each.from(), each.to())), is(true));
+    }
+
+    return pairs;
+  }
+
+  static Edge<Integer> edge(int from, int to){
+    return IntGraph.FACTORY.make(from, to, 0.0);
+  }
+
+  /**
+   * A graph of small integers.
+   */
+  static class IntGraph extends AbstractDirectedAcyclicGraph <Integer, Edge<Integer>> {
+    static final EdgeFactory<Integer, Edge<Integer>> FACTORY = IntEdge::new;
+
+    IntGraph(){
+      super(FACTORY);
+    }
+
+    static IntGraph of(int vertices){
+      final IntGraph graph = new IntGraph();
+      for(int v = 0; v < vertices; v++){
+        graph.addVertex(v);
+      }
+
+      return graph;
+    }
+
+    @Override public boolean hasCycle() {
+      // Kahn's algorithm: a cycle leaves some vertices unvisited
+      final Map<Integer, Integer> inDegree = new HashMap<>();
+      final Deque<Integer>        ready    = new ArrayDeque<>();
+      for(Integer each : vertexSet()){
+        inDegree.put(each, inDegreeOf(each));
+        if(inDegreeOf(each) == 0) ready.add(each);
+      }
+
+      int visited = 0;
+      while(!ready.isEmpty()){
+        final Integer next = ready.poll();
+        visited++;
+
+        for(Edge<Integer> each : outgoingEdgesOf(next)){
+          if(inDegree.merge(each.to(), -1, Integer::sum) == 0) ready.add(each.to());
+        }
+      }
+
+      return visited < vertexSet().size();
+    }
+  }
+
+  static class IntEdge implements Edge <Integer> {
+    private final Integer from;
+    private final Integer to;
+    private final double  weight;
+
+    IntEdge(Integer from, Integer to, double weight){
+      this.from   = from;
+      this.to     = to;
+      this.weight = weight;
+    }
+
+    @Override public Integer from() {
+      return from;
+    }
+
+    @Override public Integer to() {
+      return to;
+    }
+
+    @Override public double weight() {
+      return weight;
+    }
+
+    @Override public String toString() {
+      return "Edge (" + from() + ", " + to() + ")";
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package com.vesperin.cue.utils;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.vesperin.base.Source;
+import com.vesperin.base.locations.Location;
+import com.vesperin.base.locations.Locations;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Huascar Sanchez
+ */
+public class IntervalIndexTest {
+  private static final Source SRC = Source.from("TryCatch",
+    Joiner.on("\n").join(
+      ImmutableList.of(
+        "class TryCatch {"
+        , " public static void main(String args[]) {"
+        , "   int num1, num2;"
+        , "   try {"
+        , "     num1 = 0;"
+        , "     num2 = 62 / num1;"
+        , "     println(\"Try block message\");"
+        , "   } catch (ArithmeticException e) {"
+        , "     println(\"Error: Don't divide a number by zero\");"
+        , "   }"
+        , "   while (num1 >= 1) {"
+        , "     num1 = num1 / 2;"
+        , "   }"
+        , " }"
+        , " "
+        , " private static void println(String message){"
+        , "   System.out.println(message);"
+        , " }"
+        , "}"
+      )
+    )
+  );
+
+  @Test public void testIntervalIndexMatchesLocationCoverage() throws Exception {
+    final List<ASTNode> nodes = new ArrayList<>();
+    Sources.from(SRC).getCompilationUnit().accept(new ASTVisitor(true) {
+      @Override public void preVisit(ASTNode node) {
+        nodes.add(node);
+      }
+    });
+
+    final Random         random  = new Random(7);
+    final Set<Location>  ranges  = new HashSet<>();
+    final IntervalIndex  index   = new IntervalIndex();
+    for(ASTNode each : nodes){
+      if(random.nextInt(8) != 0) continue;
+
+      ranges.add(Locations.locate(each));
+      index.add(each);
+
+      for(ASTNode node : nodes){
+        final Location location = Locations.locate(node);
+
+        boolean covered = false;
+        for(Location range : ranges){
+          covered |= Locations.covers(range, location);
+        }
+
+        assertThat(index.covers(node), is(covered));
+      }
+    }
+
+    assertThat(ranges.isEmpty(), is(false));
+    assertThat(IntervalIndex.of(ranges).size() == index.size(), is(true));
+  }
+}
@@ -0,0 +1,64 @@
+package com.vesperin.cue.utils;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.vesperin.base.Source;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Huascar Sanchez
+ */
+public class OccurrenceIndexTest {
+  private static final Source SRC = Source.from("WhileLoop",
+    Joiner.on("\n").join(
+      ImmutableList.of(
+        "class WhileLoop {"
+        , " int count2Div(int num) {"
+        , "   int count = 0;"
+        , "   while (num >= 1) {"
+        , "     num = num / 2;"
+        , "     count++;"
+        , "   }"
+        , "   return count + missing;"
+        , " }"
+        , " "
+        , " int twice(int num) {"
+        , "   return count2Div(num) + count2Div(num);"
+        , " }"
+        , "}"
+      )
+    )
+  );
+
+  @Test public void testOccurrenceIndexMatchesLinkedNodes() throws Exception {
+    final CompilationUnit root = Sources.from(SRC).getCompilationUnit();
+
+    final List<SimpleName> names = new ArrayList<>();
+    root.accept(new ASTVisitor(true) {
+      @Override public boolean visit(SimpleName node) {
+        names.add(node);
+        return false;
+      }
+    });
+
+    final OccurrenceIndex index = OccurrenceIndex.of(root);
+    assertThat(OccurrenceIndex.of(root) == index, is(true));
+
+    for(SimpleName each : names){
+      final List<SimpleName> expected = AstUtils.findByNode(root, each);
+
+      assertThat(index.countOf(each), is(expected.size()));
+      assertThat(new HashSet<>(index.occurrencesOf(each)), is(new HashSet<>(expected)));
+    }
+  }
+}
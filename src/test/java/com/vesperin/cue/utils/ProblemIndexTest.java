@@ -0,0 +1,145 @@
+package com.vesperin.cue.utils;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.vesperin.base.Source;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.NodeFinder;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Huascar Sanchez
+ */
+public class ProblemIndexTest {
+  private static final Source SRC = Source.from("Broken",
+    Joiner.on("\n").join(
+      ImmutableList.of(
+        "public class Broken {"
+        , " public void run(){"
+        , "   int x = missing + 1;"
+        , "   foo(x);"
+        , "   Bar b = new Bar();"
+        , "   b.baz(missing);"
+        , "   this.field = missing;"
+        , "   if(x > 0) {"
+        , "     foo(missing);"
+        , "     Bar c = null;"
+        , "   }"
+        , "   outer: while(true) { break inner; }"
+        , " }"
+        , " "
+        , " public void other(){"
+        , "   foo(missing, this.field);"
+        , " }"
+        , "}"
+      )
+    )
+  );
+
+  @Test public void testProblemIndexMatchesProblemScan() throws Exception {
+    final CompilationUnit root = Sources.from(SRC).getCompilationUnit();
+
+    final List<SimpleName> names   = new ArrayList<>();
+    final List<ASTNode>    parents = new ArrayList<>();
+    parents.add(root);
+
+    root.accept(new ASTVisitor(true) {
+      @Override public boolean visit(SimpleName node) {
+        names.add(node);
+        return false;
+      }
+
+      @Override public boolean visit(TypeDeclaration node) {
+        parents.add(node);
+        return true;
+      }
+
+      @Override public boolean visit(MethodDeclaration node) {
+        parents.add(node);
+        return true;
+      }
+
+      @Override public boolean visit(Block node) {
+        parents.add(node);
+        return true;
+      }
+    });
+
+    final ProblemIndex index = ProblemIndex.of(root);
+    assertThat(ProblemIndex.of(root) == index, is(true));
+
+    int unresolved = 0;
+    for(SimpleName each : names){
+      final int kind = kindOf(root.getProblems(), each);
+      assertThat(index.kindOf(each), is(kind));
+
+      if(kind == 0) continue;
+
+      unresolved++;
+      for(ASTNode parent : parents){
+        assertThat(
+          index.namesWithin(parent, each.getIdentifier(), kind),
+          is(namesWithin(root.getProblems(), parent, each.getIdentifier(), kind))
+        );
+      }
+    }
+
+    // missing, foo, Bar, baz, field, ...
+    assertThat(unresolved > 10, is(true));
+  }
+
+  // the linear scans ProblemIndex replaced
+
+  private static int kindOf(IProblem[] problems, SimpleName name){
+    final int nameOffset  = name.getStartPosition();
+    final int nameInclEnd = nameOffset + name.getLength() - 1;
+
+    for(IProblem each : problems){
+      if(each.getSourceStart() == nameOffset && each.getSourceEnd() == nameInclEnd){
+        final int kind = AstUtils.getProblemKind(each);
+        if(kind != 0) return kind;
+      }
+    }
+
+    return 0;
+  }
+
+  private static List<SimpleName> namesWithin(IProblem[] problems, ASTNode parent,
+          String identifier, int kind){
+
+    final List<SimpleName> result = new ArrayList<>();
+
+    final int bodyStart = parent.getStartPosition();
+    final int bodyEnd   = bodyStart + parent.getLength();
+
+    for(IProblem each : problems){
+      final int probStart = each.getSourceStart();
+      final int probEnd   = each.getSourceEnd() + 1;
+
+      if(probStart > bodyStart && probEnd < bodyEnd){
+        if((kind & AstUtils.getProblemKind(each)) != 0){
+          final ASTNode node = NodeFinder.perform(parent, probStart, (probEnd - probStart));
+          if(node instanceof SimpleName
+            && identifier.equals(((SimpleName) node).getIdentifier())){
+            result.add((SimpleName) node);
+          }
+        }
+      }
+    }
+
+    return result;
+  }
+}